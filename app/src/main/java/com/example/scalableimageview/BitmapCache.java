@@ -0,0 +1,199 @@
+package com.example.scalableimageview;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 进程内共享的Bitmap内存缓存
+ * 以 图片来源 + 目标宽度 + 像素格式 作为key，按字节数淘汰最久没用的Bitmap
+ * 多个View显示同一张图的时候共用同一个Bitmap，横竖屏切换重建View也不需要重新解码
+ *
+ * 从缓存拿到的Bitmap带有一次引用计数，不用了要调用{@link #release}
+ * 已经被淘汰并且没有引用的Bitmap会放进{@link BitmapPool}复用
+ * 被淘汰的时候还有人在用的Bitmap按key还能找回来，比如图库预加载的图，不会因为缓存满了就重新解码
+ */
+public class BitmapCache {
+
+    private static final BitmapCache INSTANCE = new BitmapCache();
+
+    private final LruCache<String, Bitmap> cache;
+    private long evictionCount;
+
+    /**
+     * 正在被View使用的Bitmap以及使用次数
+     */
+    private final Map<Bitmap, Integer> references = new HashMap<>();
+
+    /**
+     * 还在缓存里的Bitmap
+     */
+    private final Set<Bitmap> cached = new HashSet<>();
+
+    /**
+     * 已经被淘汰但是还有引用的Bitmap，以及它们的key
+     */
+    private final Map<String, Bitmap> evictedInUse = new HashMap<>();
+    private final Map<Bitmap, String> evictedKeys = new HashMap<>();
+
+    public static BitmapCache getInstance() {
+        return INSTANCE;
+    }
+
+    private BitmapCache() {
+        // 默认用最大堆内存的1/8
+        int maxSize = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        cache = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue == newValue) {
+                    return;
+                }
+                synchronized (BitmapCache.this) {
+                    if (evicted) {
+                        evictionCount++;
+                    }
+                    cached.remove(oldValue);
+                    // 没人在用了，可以复用
+                    if (!references.containsKey(oldValue)) {
+                        BitmapPool.getInstance().put(oldValue);
+                    } else if (evicted) {
+                        // 还在用，记下来，再有人要的时候直接放回缓存
+                        evictedInUse.put(key, oldValue);
+                        evictedKeys.put(oldValue, key);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * 生成缓存的key
+     * @param source 图片来源，比如 "res:2131165271"、"content://..."、"file:///..."
+     * @param width 解码的目标宽度
+     * @param config 像素格式
+     */
+    public static String key(String source, int width, Bitmap.Config config) {
+        return source + "#" + width + "#" + config;
+    }
+
+    /**
+     * 取出缓存的Bitmap并增加一次引用
+     */
+    public synchronized Bitmap get(String key) {
+        Bitmap bitmap = cache.get(key);
+        if (bitmap == null) {
+            bitmap = evictedInUse.remove(key);
+            if (bitmap == null) {
+                return null;
+            }
+            evictedKeys.remove(bitmap);
+            cached.add(bitmap);
+            cache.put(key, bitmap);
+        }
+        acquire(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 放进缓存，调用方同时持有一次引用
+     */
+    public synchronized void put(String key, Bitmap bitmap) {
+        Bitmap evicted = evictedInUse.remove(key);
+        if (evicted != null) {
+            evictedKeys.remove(evicted);
+        }
+        acquire(bitmap);
+        cached.add(bitmap);
+        cache.put(key, bitmap);
+    }
+
+    /**
+     * 释放一次引用
+     * 引用全部释放并且已经不在缓存里的Bitmap会放进复用池，之后不能再使用
+     * 不是从缓存拿到的Bitmap直接忽略
+     */
+    public synchronized void release(Bitmap bitmap) {
+        Integer count = references.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            references.put(bitmap, count - 1);
+            return;
+        }
+        references.remove(bitmap);
+        if (!cached.contains(bitmap)) {
+            String key = evictedKeys.remove(bitmap);
+            if (key != null) {
+                evictedInUse.remove(key);
+            }
+            BitmapPool.getInstance().put(bitmap);
+        }
+    }
+
+    private void acquire(Bitmap bitmap) {
+        Integer count = references.get(bitmap);
+        references.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * 设置内存预算，超出的部分会立即淘汰
+     * @param maxBytes 缓存最多占用的字节数
+     */
+    public void setMaxSize(int maxBytes) {
+        cache.resize(maxBytes);
+    }
+
+    public int getMaxSize() {
+        return cache.maxSize();
+    }
+
+    /**
+     * 当前缓存占用的字节数
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * 被淘汰的Bitmap数量，超出内存预算和内存紧张时的清理都算在内
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 响应系统内存紧张的回调
+     * 退到后台清空缓存，前台内存紧张的时候减半
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    public synchronized void clear() {
+        cache.evictAll();
+    }
+}
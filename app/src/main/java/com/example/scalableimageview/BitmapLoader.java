@@ -0,0 +1,223 @@
+package com.example.scalableimageview;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步解码
+ * 解码放到固定数量的后台线程里面执行，完成之后回到主线程回调
+ * View在attach的时候发起解码，detach的时候取消还没完成的任务
+ */
+public class BitmapLoader {
+
+    private static final String TAG = "BitmapLoader";
+
+    /**
+     * 解码是CPU和内存密集型的任务，线程多了反而互相抢内存带宽
+     */
+    private static final int THREAD_COUNT = 2;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            THREAD_COUNT, THREAD_COUNT, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DecodeThreadFactory());
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private static final DecodeMetrics METRICS = new DecodeMetrics();
+
+    /**
+     * 解码完成回调，在主线程执行
+     */
+    interface Callback {
+        void onLoaded(Bitmap bitmap);
+    }
+
+    /**
+     * 解码耗时统计，可以用来衡量启动阶段花在解码上的时间
+     */
+    public static DecodeMetrics getMetrics() {
+        return METRICS;
+    }
+
+    /**
+     * 在后台线程解码
+     * @param decoder 具体的解码过程，在后台线程执行
+     * @param callback 解码成功之后在主线程回调，任务被取消或者解码失败则不回调
+     * @return 可以用来取消的任务
+     */
+    static Task load(Callable<Bitmap> decoder, Callback callback) {
+        return submit(new Task(decoder, callback, false, true));
+    }
+
+    /**
+     * 结果可能本来就没有，比如磁盘缓存未命中，返回null的时候不回调，也不算解码失败
+     */
+    static Task loadOptional(Callable<Bitmap> decoder, Callback callback) {
+        return submit(new Task(decoder, callback, true, true));
+    }
+
+    private static Task submit(Task task) {
+        task.future = EXECUTOR.submit(task);
+        return task;
+    }
+
+    /**
+     * 先查共享缓存，命中的话直接在当前线程回调，不再发起解码
+     * @param cacheKey 缓存的key，见{@link BitmapCache#key}
+     * @return 可以用来取消的任务，缓存命中时返回null
+     */
+    static Task load(String cacheKey, Callable<Bitmap> decoder, Callback callback) {
+        return load(cacheKey, new Task(decoder, callback, false, true));
+    }
+
+    private static Task load(String cacheKey, Task task) {
+        Bitmap cached = BitmapCache.getInstance().get(cacheKey);
+        if (cached != null) {
+            task.callback.onLoaded(cached);
+            return null;
+        }
+        return submit(task);
+    }
+
+    /**
+     * 按解码模式加载图片来源
+     * 原图已经探测过的话可以在当前线程算出缓存key并查缓存，否则在后台线程探测之后再查
+     * 后台线程里也可能命中缓存，解码耗时由{@link ImageSource#decode(int, Bitmap.Config)}真正解码的时候记录
+     * @param readBack 解码出来的Bitmap是否需要读取像素或者画到软件画布上，见{@link DecodeMode}
+     */
+    static Task load(final ImageSource source, final int width, final DecodeMode mode, final boolean readBack,
+                     Callback callback) {
+        if (source.isProbed()) {
+            final Bitmap.Config config = source.resolveConfig(mode, readBack);
+            return load(source.cacheKey(width, config), new Task(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() throws IOException {
+                    return source.decode(width, config);
+                }
+            }, callback, false, false));
+        }
+        return submit(new Task(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws IOException {
+                return source.load(width, mode, readBack);
+            }
+        }, callback, false, false));
+    }
+
+    /**
+     * 在解码线程执行其它解码工作，比如分块解码
+     */
+    static void execute(Runnable runnable) {
+        EXECUTOR.execute(runnable);
+    }
+
+    /**
+     * 一次解码任务
+     */
+    static class Task implements Runnable {
+
+        private final Callable<Bitmap> decoder;
+        private final Callback callback;
+        private final boolean optional;
+
+        /**
+         * 是否由任务自己记录解码耗时，按图片来源加载的时候可能命中缓存，由ImageSource在真正解码的时候记录
+         */
+        private final boolean timed;
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        private Task(Callable<Bitmap> decoder, Callback callback, boolean optional, boolean timed) {
+            this.decoder = decoder;
+            this.callback = callback;
+            this.optional = optional;
+            this.timed = timed;
+        }
+
+        /**
+         * 取消任务，只能在主线程调用
+         * 还在排队的任务直接出队，已经在解码的任务会跑完，但是结果会被丢掉
+         */
+        void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            if (future != null && future.cancel(false)) {
+                METRICS.recordCancelled();
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            final Bitmap bitmap;
+            long start = System.nanoTime();
+            try {
+                bitmap = decoder.call();
+            } catch (Exception e) {
+                METRICS.recordFailed();
+                Log.w(TAG, "decode failed", e);
+                return;
+            }
+            if (bitmap == null) {
+                if (!optional) {
+                    METRICS.recordFailed();
+                }
+                return;
+            }
+            if (timed) {
+                METRICS.recordDecode(System.nanoTime() - start);
+                METRICS.recordConfig(bitmap);
+            }
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled) {
+                        callback.onLoaded(bitmap);
+                    } else {
+                        // 解码的时候已经在缓存里记了一次引用，没人接收就还回去
+                        BitmapCache.getInstance().release(bitmap);
+                    }
+                }
+            });
+        }
+    }
+
+    private static class DecodeThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // 后台优先级，不跟UI线程抢CPU
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "bitmap-decode-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.scalableimageview;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bitmap复用池
+ * 不再使用的Bitmap按 宽 × 高 × 像素格式 分桶存起来，解码的时候通过inBitmap复用，减少GC
+ * 只有确定没有任何地方在用的Bitmap才能放进来
+ */
+public class BitmapPool {
+
+    private static final BitmapPool INSTANCE = new BitmapPool();
+
+    private final Map<Long, ArrayDeque<Bitmap>> buckets = new HashMap<>();
+
+    /**
+     * 按放入顺序排列，超出容量的时候先淘汰最早放入的
+     */
+    private final ArrayDeque<Bitmap> order = new ArrayDeque<>();
+
+    private long maxSize;
+    private long size;
+
+    private long hitCount;
+    private long missCount;
+    private long putCount;
+    private long evictionCount;
+    private long reusedBytes;
+
+    public static BitmapPool getInstance() {
+        return INSTANCE;
+    }
+
+    private BitmapPool() {
+        // 默认用最大堆内存的1/16
+        maxSize = Runtime.getRuntime().maxMemory() / 16;
+    }
+
+    /**
+     * 取出一个尺寸和像素格式都符合的Bitmap，内容是旧的，需要调用方覆盖
+     * @return 没有合适的返回null
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bucket = buckets.get(key(width, height, config));
+        Bitmap bitmap = bucket == null ? null : bucket.pollLast();
+        if (bitmap == null) {
+            missCount++;
+            return null;
+        }
+        order.remove(bitmap);
+        size -= bitmap.getAllocationByteCount();
+        hitCount++;
+        reusedBytes += bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    /**
+     * 放回池子，不可变的和已经回收的不能复用，直接丢弃
+     * 硬件Bitmap都是不可变的，也在这里被丢掉，不需要单独判断（Config.HARDWARE在API 26以下不存在）
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) {
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > maxSize) {
+            return;
+        }
+        long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(key, bucket);
+        } else if (bucket.contains(bitmap)) {
+            return;
+        }
+        bucket.addLast(bitmap);
+        order.addLast(bitmap);
+        size += bytes;
+        putCount++;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * 设置池子最多占用的字节数，超出的部分立即淘汰
+     */
+    public synchronized void setMaxSize(long maxBytes) {
+        maxSize = maxBytes;
+        trimToSize(maxSize);
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getPutCount() {
+        return putCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 通过复用省下来的分配字节数
+     */
+    public synchronized long getReusedBytes() {
+        return reusedBytes;
+    }
+
+    public synchronized void resetStats() {
+        hitCount = 0;
+        missCount = 0;
+        putCount = 0;
+        evictionCount = 0;
+        reusedBytes = 0;
+    }
+
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            synchronized (this) {
+                trimToSize(maxSize / 2);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(long targetSize) {
+        while (size > targetSize && !order.isEmpty()) {
+            Bitmap eldest = order.pollFirst();
+            buckets.get(key(eldest.getWidth(), eldest.getHeight(), eldest.getConfig())).remove(eldest);
+            size -= eldest.getAllocationByteCount();
+            evictionCount++;
+        }
+    }
+
+    private static long key(int width, int height, Bitmap.Config config) {
+        return ((long) width << 36) | ((long) height << 8) | config.ordinal();
+    }
+}
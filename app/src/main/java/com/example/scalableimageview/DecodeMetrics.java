@@ -0,0 +1,131 @@
+package com.example.scalableimageview;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+
+/**
+ * 解码耗时统计
+ * 所有方法都是线程安全的，解码线程写，主线程读
+ */
+public class DecodeMetrics {
+
+    private long decodeCount;
+    private long totalDecodeNanos;
+    private long maxDecodeNanos;
+    private long lastDecodeNanos;
+    private long cancelledCount;
+    private long failedCount;
+
+    /**
+     * 按像素格式统计的解码次数和字节数，下标是Bitmap.Config的ordinal
+     */
+    private final long[] configCounts = new long[Bitmap.Config.values().length];
+    private final long[] configBytes = new long[Bitmap.Config.values().length];
+
+    synchronized void recordDecode(long nanos) {
+        decodeCount++;
+        totalDecodeNanos += nanos;
+        lastDecodeNanos = nanos;
+        maxDecodeNanos = Math.max(maxDecodeNanos, nanos);
+    }
+
+    synchronized void recordConfig(Bitmap bitmap) {
+        Bitmap.Config config = bitmap.getConfig();
+        if (config == null) {
+            return;
+        }
+        configCounts[config.ordinal()]++;
+        configBytes[config.ordinal()] += bitmap.getAllocationByteCount();
+    }
+
+    synchronized void recordCancelled() {
+        cancelledCount++;
+    }
+
+    synchronized void recordFailed() {
+        failedCount++;
+    }
+
+    /**
+     * 成功完成的解码次数
+     */
+    public synchronized long getDecodeCount() {
+        return decodeCount;
+    }
+
+    public synchronized float getTotalDecodeMillis() {
+        return totalDecodeNanos / 1e6f;
+    }
+
+    public synchronized float getAverageDecodeMillis() {
+        return decodeCount == 0 ? 0 : totalDecodeNanos / 1e6f / decodeCount;
+    }
+
+    public synchronized float getMaxDecodeMillis() {
+        return maxDecodeNanos / 1e6f;
+    }
+
+    public synchronized float getLastDecodeMillis() {
+        return lastDecodeNanos / 1e6f;
+    }
+
+    /**
+     * 还没开始解码就被取消的次数，比如View在解码完成之前就被移除了
+     */
+    public synchronized long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * 解码成某种像素格式的次数
+     */
+    public synchronized long getConfigCount(Bitmap.Config config) {
+        return configCounts[config.ordinal()];
+    }
+
+    /**
+     * 解码成某种像素格式的Bitmap一共占用的字节数，HARDWARE的在显存里
+     */
+    public synchronized long getConfigBytes(Bitmap.Config config) {
+        return configBytes[config.ordinal()];
+    }
+
+    public synchronized void reset() {
+        decodeCount = 0;
+        totalDecodeNanos = 0;
+        maxDecodeNanos = 0;
+        lastDecodeNanos = 0;
+        cancelledCount = 0;
+        failedCount = 0;
+        Arrays.fill(configCounts, 0);
+        Arrays.fill(configBytes, 0);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DecodeMetrics{count=" + decodeCount
+                + ", avg=" + getAverageDecodeMillis() + "ms"
+                + ", max=" + getMaxDecodeMillis() + "ms"
+                + ", cancelled=" + cancelledCount
+                + ", failed=" + failedCount
+                + ", configs=" + configsToString() + "}";
+    }
+
+    private String configsToString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (Bitmap.Config config : Bitmap.Config.values()) {
+            if (configCounts[config.ordinal()] > 0) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(config).append('=').append(configCounts[config.ordinal()]);
+            }
+        }
+        return builder.append(']').toString();
+    }
+}
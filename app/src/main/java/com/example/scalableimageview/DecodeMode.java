@@ -0,0 +1,53 @@
+package com.example.scalableimageview;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * 解码时选择像素格式的策略
+ * RGB_565每个像素2字节，只有ARGB_8888的一半，但是没有透明度
+ * HARDWARE的像素只存在显存里，不占Java堆，内存紧张之后也不用重新上传，但是不能读取像素、不能画到软件画布上
+ */
+public enum DecodeMode {
+
+    /**
+     * 自动选择：不透明的图（JPEG）用RGB_565，API 26以上并且不需要读取像素的用HARDWARE，其它用ARGB_8888
+     */
+    AUTO,
+
+    ARGB_8888,
+
+    /**
+     * 强制RGB_565，有透明度的图透明部分会变成黑色
+     */
+    RGB_565,
+
+    /**
+     * 条件不满足的时候退回ARGB_8888
+     */
+    HARDWARE;
+
+    /**
+     * @param opaque 图片是否确定没有透明像素
+     * @param readBack 是否需要读取像素或者画到软件画布上
+     */
+    Bitmap.Config resolve(boolean opaque, boolean readBack) {
+        switch (this) {
+            case RGB_565:
+                return Bitmap.Config.RGB_565;
+            case HARDWARE:
+                return hardwareAllowed(readBack) ? Bitmap.Config.HARDWARE : Bitmap.Config.ARGB_8888;
+            case AUTO:
+                if (opaque) {
+                    return Bitmap.Config.RGB_565;
+                }
+                return hardwareAllowed(readBack) ? Bitmap.Config.HARDWARE : Bitmap.Config.ARGB_8888;
+            default:
+                return Bitmap.Config.ARGB_8888;
+        }
+    }
+
+    private static boolean hardwareAllowed(boolean readBack) {
+        return !readBack && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+    }
+}
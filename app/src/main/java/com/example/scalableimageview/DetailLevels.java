@@ -0,0 +1,237 @@
+package com.example.scalableimageview;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.view.View;
+
+import java.io.IOException;
+
+/**
+ * 多级分辨率
+ * 以View当前使用的Bitmap作为第0级，第n级的宽度是它的2^n倍
+ * 根据当前的放缩系数选择刚好不小于屏幕显示尺寸的那一级：缩小的时候用小图，放大的时候用大图
+ * 还没解码出来的级别在后台解码，期间先用最接近的已有级别，绘制不会因为切换而卡顿
+ */
+class DetailLevels {
+
+    private static final String TAG = "DetailLevels";
+
+    private static final int MIN_LEVEL = -2;
+    private static final int MAX_LEVEL = 3;
+
+    private final View view;
+
+    /**
+     * 级别还回缓存之前让它丢掉对应的Shader，不再持有换掉的Bitmap
+     */
+    private final RenderQuality renderQuality;
+    private final ImageSource source;
+    private final int baseWidth;
+
+    /**
+     * 下标是 级别 - MIN_LEVEL，第0级不在这里，由View自己持有
+     */
+    private final Bitmap[] levels = new Bitmap[MAX_LEVEL - MIN_LEVEL + 1];
+    private final BitmapLoader.Task[] tasks = new BitmapLoader.Task[MAX_LEVEL - MIN_LEVEL + 1];
+
+    /**
+     * 原图的宽度，超过原图宽度的级别没有意义，0表示还不知道
+     */
+    private volatile int nativeWidth;
+    private boolean probing;
+
+    private DecodeMode mode = DecodeMode.AUTO;
+    private boolean readBack;
+
+    /**
+     * 最近一次update的放缩系数，以及当前用来绘制的级别
+     */
+    private float scale;
+    private int shown;
+
+    /**
+     * update之后、release之前为true，后台探测完成之后据此决定要不要重新选择级别
+     */
+    private boolean active;
+
+    DetailLevels(View view, RenderQuality renderQuality, ImageSource source, int baseWidth) {
+        this.view = view;
+        this.renderQuality = renderQuality;
+        this.source = source;
+        this.baseWidth = baseWidth;
+    }
+
+    /**
+     * 设置各级别解码的像素格式策略，变化之后已有的级别全部释放重新解码
+     */
+    void setDecodeMode(DecodeMode mode, boolean readBack) {
+        if (this.mode == mode && this.readBack == readBack) {
+            return;
+        }
+        release();
+        this.mode = mode;
+        this.readBack = readBack;
+    }
+
+    /**
+     * 根据放缩系数计算需要的级别
+     */
+    int levelFor(float scale) {
+        int level = 0;
+        while (level > MIN_LEVEL && scale <= 1f / (1 << (1 - level))) {
+            level--;
+        }
+        while (level < maxLevel() && scale > (1 << level)) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 放缩系数变了之后调用（手势、动画、尺寸变化），选择用来绘制的级别，需要的级别还没解码的话发起解码
+     * 不能在onDraw里调用：缓存命中的时候会同步回调并重绘
+     * @param scale 第0级当前的放缩系数
+     */
+    void update(float scale) {
+        this.scale = scale;
+        active = true;
+        int wanted = levelFor(scale);
+        request(wanted);
+        choose(wanted);
+    }
+
+    /**
+     * 当前用来绘制的Bitmap，只读，onDraw里调用
+     * @param base 第0级，也就是View当前的Bitmap
+     * @return 需要的级别已经解码好就是它，否则是最接近的已有级别
+     */
+    Bitmap current(Bitmap base) {
+        return shown == 0 ? base : levels[shown - MIN_LEVEL];
+    }
+
+    private void choose(int wanted) {
+        // 优先用更清晰的，再退而求其次
+        shown = 0;
+        for (int distance = 0; distance <= MAX_LEVEL - MIN_LEVEL; distance++) {
+            if (available(wanted + distance)) {
+                shown = wanted + distance;
+                break;
+            }
+            if (available(wanted - distance)) {
+                shown = wanted - distance;
+                break;
+            }
+        }
+        // 只保留正在用的和需要的，其它的还回缓存
+        for (int level = MIN_LEVEL; level <= MAX_LEVEL; level++) {
+            if (level != wanted && level != shown) {
+                releaseLevel(level);
+            }
+        }
+    }
+
+    /**
+     * 提前解码某个放缩系数需要的级别，比如双击放大动画开始的时候
+     */
+    void prefetch(float scale) {
+        request(levelFor(scale));
+    }
+
+    /**
+     * 释放除第0级以外的所有级别，取消正在进行的解码
+     */
+    void release() {
+        active = false;
+        shown = 0;
+        for (int level = MIN_LEVEL; level <= MAX_LEVEL; level++) {
+            releaseLevel(level);
+        }
+    }
+
+    private boolean available(int level) {
+        if (level == 0) {
+            return true;
+        }
+        return level >= MIN_LEVEL && level <= MAX_LEVEL && levels[level - MIN_LEVEL] != null;
+    }
+
+    private int maxLevel() {
+        int width = nativeWidth;
+        if (width == 0) {
+            probeNativeWidth();
+            return 0;
+        }
+        int level = 0;
+        while (level < MAX_LEVEL && (baseWidth << level) < width) {
+            level++;
+        }
+        return level;
+    }
+
+    private void probeNativeWidth() {
+        // 同一个图片来源只探测一次，其它View已经探测过的直接用
+        if (source.isProbed()) {
+            nativeWidth = source.getWidth();
+            return;
+        }
+        if (probing) {
+            return;
+        }
+        probing = true;
+        BitmapLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    source.probe();
+                } catch (IOException e) {
+                    Log.w(TAG, "probe failed: " + source.getKey(), e);
+                    return;
+                }
+                nativeWidth = source.getWidth();
+                // 知道原图宽度之后可能可以用更大的级别
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (active) {
+                            update(scale);
+                            view.invalidate();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void request(final int level) {
+        final int index = level - MIN_LEVEL;
+        if (level == 0 || levels[index] != null || tasks[index] != null) {
+            return;
+        }
+        final int width = level > 0 ? Math.min(baseWidth << level, nativeWidth) : baseWidth >> -level;
+        tasks[index] = BitmapLoader.load(source, width, mode, readBack, new BitmapLoader.Callback() {
+            @Override
+            public void onLoaded(Bitmap bitmap) {
+                tasks[index] = null;
+                levels[index] = bitmap;
+                choose(levelFor(scale));
+                view.invalidate();
+            }
+        });
+    }
+
+    private void releaseLevel(int level) {
+        if (level == 0) {
+            return;
+        }
+        int index = level - MIN_LEVEL;
+        if (tasks[index] != null) {
+            tasks[index].cancel();
+            tasks[index] = null;
+        }
+        if (levels[index] != null) {
+            renderQuality.forget(levels[index]);
+            BitmapCache.getInstance().release(levels[index]);
+            levels[index] = null;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.scalableimageview;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.View;
+
+/**
+ * 脏区域
+ * 手势改变了什么就只把受影响的矩形标记为需要重绘：图片移动前后位置的并集，或者新增笔迹段的范围
+ * 两帧之间多次标记会合并成一个矩形
+ *
+ * 软件绘制时只重绘这个矩形；硬件加速从API 21开始忽略传入的矩形，由RenderNode自己计算，
+ * 这时候统计出来的像素数可以看作理想情况下需要重绘的面积
+ *
+ * 打开调试遮罩之后，每帧把重绘的矩形和像素数画出来
+ */
+public class DirtyRegion {
+
+    private static boolean showOverlay;
+
+    private static final Paint OVERLAY_PAINT = new Paint();
+    private static final Paint TEXT_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    static {
+        OVERLAY_PAINT.setStyle(Paint.Style.STROKE);
+        OVERLAY_PAINT.setStrokeWidth(Utils.dpToPixel(2));
+        OVERLAY_PAINT.setColor(Color.RED);
+        TEXT_PAINT.setColor(Color.RED);
+        TEXT_PAINT.setTextSize(Utils.dpToPixel(12));
+    }
+
+    private final View view;
+    private final ViewMetrics metrics;
+
+    /**
+     * 上一帧之后标记过的区域
+     */
+    private final RectF pending = new RectF();
+    private final Rect dirty = new Rect();
+
+    /**
+     * 当前这一帧重绘的区域，用来画调试遮罩
+     */
+    private final Rect frame = new Rect();
+    private long framePixels;
+
+    DirtyRegion(View view, ViewMetrics metrics) {
+        this.view = view;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 在每帧重绘的区域上画出边框和像素数，所有View一起生效
+     */
+    public static void setShowOverlay(boolean show) {
+        showOverlay = show;
+    }
+
+    public static boolean isShowOverlay() {
+        return showOverlay;
+    }
+
+    /**
+     * 标记一块需要重绘的区域，View坐标系
+     */
+    void add(float left, float top, float right, float bottom) {
+        if (left >= right || top >= bottom) {
+            return;
+        }
+        if (pending.isEmpty()) {
+            pending.set(left, top, right, bottom);
+        } else {
+            pending.union(left, top, right, bottom);
+        }
+    }
+
+    void add(RectF rect) {
+        add(rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+    /**
+     * 标记一个点周围的区域，比如笔迹上的点，radius是线宽的一半
+     */
+    void addPoint(float x, float y, float radius) {
+        add(x - radius, y - radius, x + radius, y + radius);
+    }
+
+    /**
+     * 按标记过的区域请求重绘
+     */
+    @SuppressWarnings("deprecation")
+    void invalidate() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (showOverlay) {
+            // 上一帧画的遮罩也要擦掉
+            add(frame.left, frame.top, frame.right, frame.bottom);
+        }
+        pending.roundOut(dirty);
+        // 抗锯齿的边缘会超出半个像素
+        dirty.inset(-1, -1);
+        view.invalidate(dirty);
+    }
+
+    /**
+     * 在onDraw开头调用，统计这一帧重绘的像素数
+     * 没有标记过就触发的重绘，比如尺寸变化或者直接调用invalidate()，按整个View算
+     */
+    void beginFrame() {
+        if (pending.isEmpty()) {
+            frame.set(0, 0, view.getWidth(), view.getHeight());
+        } else {
+            pending.roundOut(frame);
+            frame.inset(-1, -1);
+            if (!frame.intersect(0, 0, view.getWidth(), view.getHeight())) {
+                frame.setEmpty();
+            }
+        }
+        pending.setEmpty();
+        framePixels = (long) frame.width() * frame.height();
+        metrics.recordDirtyPixels(framePixels);
+    }
+
+    /**
+     * 在onDraw结尾调用，View坐标系
+     */
+    void drawOverlay(Canvas canvas) {
+        if (!showOverlay || frame.isEmpty()) {
+            return;
+        }
+        canvas.drawRect(frame, OVERLAY_PAINT);
+        canvas.drawText(framePixels + "px", frame.left + OVERLAY_PAINT.getStrokeWidth(),
+                frame.top + TEXT_PAINT.getTextSize(), TEXT_PAINT);
+    }
+}
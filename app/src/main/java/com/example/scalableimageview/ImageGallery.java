@@ -0,0 +1,251 @@
+package com.example.scalableimageview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.Nullable;
+import androidx.viewpager.widget.PagerAdapter;
+import androidx.viewpager.widget.ViewPager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 图库：左右翻页查看多张图片，每一页是一个{@link ScalableImageView}
+ * - 当前页前后若干张图提前按屏幕宽度在后台解码，翻页的时候直接从缓存拿到，不用等解码
+ * - 移出去的页面View放进回收池，给新出现的页复用，Bitmap随着页面移出还给缓存
+ * - 每一页的放缩和平移单独保存，翻回来的时候恢复
+ *
+ * 页面View只创建ViewPager需要的那几个，更远的邻居只预先解码Bitmap
+ */
+public class ImageGallery extends ViewPager {
+
+    private static final int DEFAULT_PRELOAD_WINDOW = 2;
+
+    private final List<ImageSource> sources = new ArrayList<>();
+    private final GalleryAdapter adapter = new GalleryAdapter();
+    private final ArrayDeque<ScalableImageView> recycledPages = new ArrayDeque<>();
+
+    /**
+     * 每一页的放缩状态，下标是页码
+     */
+    private final SparseArray<ScalableImageView.ZoomState> zoomStates = new SparseArray<>();
+
+    /**
+     * 预加载好的图，持有一次缓存引用，翻到之前不会被淘汰
+     */
+    private final SparseArray<Bitmap> preloaded = new SparseArray<>();
+    private final SparseArray<BitmapLoader.Task> preloadTasks = new SparseArray<>();
+
+    private int preloadWindow = DEFAULT_PRELOAD_WINDOW;
+
+    /**
+     * 换一组图的时候旧页面的放缩状态不保存
+     */
+    private boolean replacingImages;
+
+    private DecodeMode decodeMode = DecodeMode.AUTO;
+
+    /**
+     * 每一页第0级的解码宽度，也就是屏幕宽度
+     */
+    private final int decodeWidth;
+
+    public ImageGallery(Context context) {
+        this(context, null);
+    }
+
+    public ImageGallery(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        decodeWidth = getResources().getDisplayMetrics().widthPixels;
+        setAdapter(adapter);
+        addOnPageChangeListener(new SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                preload(position);
+            }
+        });
+    }
+
+    /**
+     * 设置要显示的图片，回到第一页，之前保存的放缩状态全部丢弃
+     */
+    public void setImages(List<ImageSource> images) {
+        releasePreloaded();
+        sources.clear();
+        sources.addAll(images);
+        zoomStates.clear();
+        replacingImages = true;
+        adapter.notifyDataSetChanged();
+        replacingImages = false;
+        setCurrentItem(0);
+        preload(0);
+    }
+
+    public int getImageCount() {
+        return sources.size();
+    }
+
+    /**
+     * 设置预加载的范围，当前页前后各多少张
+     */
+    public void setPreloadWindow(int window) {
+        preloadWindow = Math.max(0, window);
+        preload(getCurrentItem());
+    }
+
+    public int getPreloadWindow() {
+        return preloadWindow;
+    }
+
+    /**
+     * 所有页面和预加载使用的解码策略，见{@link ScalableImageView#setDecodeMode}
+     */
+    public void setDecodeMode(DecodeMode mode) {
+        if (decodeMode == mode) {
+            return;
+        }
+        decodeMode = mode;
+        releasePreloaded();
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (child instanceof ScalableImageView) {
+                ((ScalableImageView) child).setDecodeMode(mode);
+            }
+        }
+        preload(getCurrentItem());
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        preload(getCurrentItem());
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        releasePreloaded();
+    }
+
+    /**
+     * 按离当前页的距离由近到远发起解码，窗口外的释放
+     */
+    private void preload(int center) {
+        if (!isAttachedToWindow()) {
+            return;
+        }
+        for (int i = preloaded.size() - 1; i >= 0; i--) {
+            if (!inWindow(preloaded.keyAt(i), center)) {
+                BitmapCache.getInstance().release(preloaded.valueAt(i));
+                preloaded.removeAt(i);
+            }
+        }
+        for (int i = preloadTasks.size() - 1; i >= 0; i--) {
+            if (!inWindow(preloadTasks.keyAt(i), center)) {
+                preloadTasks.valueAt(i).cancel();
+                preloadTasks.removeAt(i);
+            }
+        }
+        // 解码线程按提交顺序执行，先提交的先解码
+        for (int distance = 0; distance <= preloadWindow; distance++) {
+            preloadPosition(center + distance);
+            if (distance > 0) {
+                preloadPosition(center - distance);
+            }
+        }
+    }
+
+    private void preloadPosition(final int position) {
+        if (position < 0 || position >= sources.size()
+                || preloaded.get(position) != null || preloadTasks.get(position) != null) {
+            return;
+        }
+        BitmapLoader.Task task = BitmapLoader.load(sources.get(position), decodeWidth, decodeMode,
+                Utils.needsReadBack(this), new BitmapLoader.Callback() {
+                    @Override
+                    public void onLoaded(Bitmap bitmap) {
+                        preloadTasks.remove(position);
+                        preloaded.put(position, bitmap);
+                        // 提前上传纹理，翻页的第一帧不用再等
+                        bitmap.prepareToDraw();
+                    }
+                });
+        // 缓存命中的时候已经同步回调过了
+        if (task != null) {
+            preloadTasks.put(position, task);
+        }
+    }
+
+    private boolean inWindow(int position, int center) {
+        return Math.abs(position - center) <= preloadWindow;
+    }
+
+    private void releasePreloaded() {
+        for (int i = 0; i < preloaded.size(); i++) {
+            BitmapCache.getInstance().release(preloaded.valueAt(i));
+        }
+        preloaded.clear();
+        for (int i = 0; i < preloadTasks.size(); i++) {
+            preloadTasks.valueAt(i).cancel();
+        }
+        preloadTasks.clear();
+    }
+
+    private class GalleryAdapter extends PagerAdapter {
+
+        @Override
+        public int getCount() {
+            return sources.size();
+        }
+
+        @Override
+        public Object instantiateItem(ViewGroup container, int position) {
+            ScalableImageView page = recycledPages.poll();
+            if (page == null) {
+                page = new ScalableImageView(getContext(), null);
+                page.setDecodeWidth(decodeWidth);
+            }
+            // 页面不在窗口上，这里只是记下来，attach之后才解码，预加载过的直接命中缓存
+            page.setDecodeMode(decodeMode);
+            page.setImageSource(sources.get(position));
+            page.setZoomState(zoomStates.get(position));
+            container.addView(page);
+            return page;
+        }
+
+        @Override
+        public void destroyItem(ViewGroup container, int position, Object object) {
+            ScalableImageView page = (ScalableImageView) object;
+            if (!replacingImages) {
+                ScalableImageView.ZoomState state = zoomStates.get(position);
+                if (state == null) {
+                    state = new ScalableImageView.ZoomState();
+                    zoomStates.put(position, state);
+                }
+                page.saveZoomState(state);
+            }
+            // 移出窗口的时候Bitmap还给缓存
+            container.removeView(page);
+            recycledPages.add(page);
+        }
+
+        @Override
+        public boolean isViewFromObject(View view, Object object) {
+            return view == object;
+        }
+
+        /**
+         * 换了一组图之后所有页面都重新创建
+         */
+        @Override
+        public int getItemPosition(Object object) {
+            return POSITION_NONE;
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.example.scalableimageview;
+
+import android.content.ContentResolver;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.net.Uri;
+import android.os.Build;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 图片来源
+ * 资源、文件、ContentProvider、内存映射文件都通过它解码，View不需要知道数据从哪里来
+ *
+ * 原图尺寸只探测一次，之后按目标宽度解码都只读一遍数据
+ * 本地文件直接交给native按文件描述符读取，内存映射的文件直接从映射区读取，都不会在Java堆上复制整个文件
+ */
+public abstract class ImageSource {
+
+    /**
+     * 原图尺寸，探测之前是0
+     */
+    private volatile int width;
+    private volatile int height;
+
+    /**
+     * 没有透明通道，探测的时候按格式确定，之后不再改变
+     * 像素格式和缓存key都跟它有关，变了的话同一个来源会按另一个key再解码一份
+     */
+    private volatile boolean opaque;
+
+    /**
+     * 资源图片
+     */
+    public static ImageSource fromResource(Resources res, int id) {
+        return new ResourceSource(res, id);
+    }
+
+    /**
+     * 本地文件，解码时由native直接读文件描述符
+     */
+    public static ImageSource fromFile(File file) {
+        return new FileSource(file);
+    }
+
+    /**
+     * content://之类的Uri，每次解码重新打开
+     */
+    public static ImageSource fromUri(ContentResolver resolver, Uri uri) {
+        return new UriSource(resolver, uri);
+    }
+
+    /**
+     * 内存映射的本地文件，第一次解码的时候映射，之后多次解码共用同一块映射区
+     * 适合需要反复按不同宽度解码的大图，数据由系统页缓存管理，不占Java堆
+     */
+    public static ImageSource fromMappedFile(File file) {
+        return new MappedFileSource(file);
+    }
+
+    /**
+     * 只能读一次的数据流，只用于分块解码
+     */
+    static ImageSource fromStream(InputStream stream) {
+        return new StreamSource(stream);
+    }
+
+    /**
+     * 图片来源的标识，用来生成缓存的key，比如 "res:2131165271"、"file:///sdcard/a.jpg"
+     */
+    public abstract String getKey();
+
+    /**
+     * 打开一个新的数据流，调用方负责关闭
+     */
+    @WorkerThread
+    protected abstract InputStream open() throws IOException;
+
+    /**
+     * 能不能多次打开，只能读一次的数据流返回false
+     */
+    boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * 读一遍数据完成一次解码，子类可以换成更直接的解码方式
+     */
+    @WorkerThread
+    protected Bitmap decode(BitmapFactory.Options options) throws IOException {
+        InputStream stream = open();
+        try {
+            return BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * 创建分块解码器，解码器会复制一份自己需要的数据，创建完之后数据流就可以关闭
+     */
+    @WorkerThread
+    BitmapRegionDecoder newRegionDecoder() throws IOException {
+        InputStream stream = open();
+        try {
+            return BitmapRegionDecoder.newInstance(stream, false);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * 只解码边界得到原图尺寸，已经探测过的直接返回
+     */
+    @WorkerThread
+    public synchronized void probe() throws IOException {
+        if (width > 0) {
+            return;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("unsupported image: " + getKey());
+        }
+        opaque = "image/jpeg".equals(options.outMimeType);
+        height = options.outHeight;
+        width = options.outWidth;
+    }
+
+    public boolean isProbed() {
+        return width > 0;
+    }
+
+    /**
+     * 原图宽度，探测之前是0
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 原图高度，探测之前是0
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 是否确定没有透明像素，目前只有JPEG，探测之前是false
+     */
+    public boolean isOpaque() {
+        return opaque;
+    }
+
+    /**
+     * 按解码模式选择像素格式，需要先探测过
+     * @param readBack 解码出来的Bitmap是否需要读取像素或者画到软件画布上
+     */
+    public Bitmap.Config resolveConfig(DecodeMode mode, boolean readBack) {
+        return mode.resolve(opaque, readBack);
+    }
+
+    /**
+     * 按目标宽度和像素格式解码之后在缓存中的key
+     */
+    public String cacheKey(int width, Bitmap.Config config) {
+        return BitmapCache.key(getKey(), width, config);
+    }
+
+    /**
+     * 按解码模式加载：先探测原图，再查缓存，没有的话解码
+     * 给还没探测过、没办法在主线程算出缓存key的调用方使用
+     */
+    @WorkerThread
+    Bitmap load(int width, DecodeMode mode, boolean readBack) throws IOException {
+        probe();
+        Bitmap.Config config = resolveConfig(mode, readBack);
+        Bitmap cached = BitmapCache.getInstance().get(cacheKey(width, config));
+        if (cached != null) {
+            return cached;
+        }
+        return decode(width, config);
+    }
+
+    /**
+     * 按目标宽度和像素格式解码，跳过缓存查找，解码结果放进缓存，解码耗时记到{@link BitmapLoader#getMetrics()}
+     * 给已经查过缓存的调用方使用，避免重复统计未命中
+     * 先按2的幂采样，剩下的缩放交给inDensity，大图不用整张解码出来再缩小
+     */
+    @WorkerThread
+    Bitmap decode(int targetWidth, Bitmap.Config config) throws IOException {
+        probe();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = config;
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        options.inSampleSize = sampleSize;
+        // 采样之后的宽度大约是 原图宽度 / 采样率，再乘以 目标宽度 * 采样率 / 原图宽度
+        options.inDensity = width;
+        options.inTargetDensity = targetWidth * sampleSize;
+        // 按密度缩放之后的尺寸，跟BitmapFactory内部的取整方式一致
+        int targetHeight = (int) (height * ((float) targetWidth / width) + 0.5f);
+        long start = System.nanoTime();
+        Bitmap bitmap = decodeReusing(options, targetWidth, targetHeight);
+        if (bitmap == null) {
+            return null;
+        }
+        BitmapLoader.getMetrics().recordDecode(System.nanoTime() - start);
+        BitmapLoader.getMetrics().recordConfig(bitmap);
+        BitmapCache.getInstance().put(cacheKey(targetWidth, config), bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 从复用池里找一个同样尺寸的Bitmap作为inBitmap解码，复用失败的话再正常解码
+     * 解码出来的Bitmap都是可变的，用完之后可以放回复用池
+     */
+    private Bitmap decodeReusing(BitmapFactory.Options options, int width, int height) throws IOException {
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.HARDWARE) {
+            // 硬件Bitmap不可变，也不能作为inBitmap；Config.HARDWARE在API 26以下不存在，先判断版本
+            return decode(options);
+        }
+        options.inMutable = true;
+        options.inBitmap = BitmapPool.getInstance().get(width, height, config);
+        try {
+            return decode(options);
+        } catch (IllegalArgumentException e) {
+            // 实际解码尺寸跟预期不一致，inBitmap不能用
+            BitmapPool.getInstance().put(options.inBitmap);
+            options.inBitmap = null;
+            return decode(options);
+        }
+    }
+
+    private static class ResourceSource extends ImageSource {
+
+        private final Resources res;
+        private final int id;
+
+        ResourceSource(Resources res, int id) {
+            this.res = res;
+            this.id = id;
+        }
+
+        @Override
+        public String getKey() {
+            return "res:" + id;
+        }
+
+        /**
+         * 资源的数据流是AssetInputStream，BitmapFactory会直接在native读取
+         */
+        @Override
+        protected InputStream open() {
+            return res.openRawResource(id);
+        }
+    }
+
+    private static class FileSource extends ImageSource {
+
+        private final File file;
+
+        FileSource(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public String getKey() {
+            return "file://" + file.getAbsolutePath();
+        }
+
+        @Override
+        protected InputStream open() throws IOException {
+            return new FileInputStream(file);
+        }
+
+        @Override
+        protected Bitmap decode(BitmapFactory.Options options) throws IOException {
+            FileInputStream stream = new FileInputStream(file);
+            try {
+                return BitmapFactory.decodeFileDescriptor(stream.getFD(), null, options);
+            } finally {
+                stream.close();
+            }
+        }
+
+        /**
+         * 按路径创建的分块解码器直接读文件，不需要把整个文件复制一份
+         */
+        @Override
+        BitmapRegionDecoder newRegionDecoder() throws IOException {
+            return BitmapRegionDecoder.newInstance(file.getAbsolutePath(), false);
+        }
+    }
+
+    private static class UriSource extends ImageSource {
+
+        private final ContentResolver resolver;
+        private final Uri uri;
+
+        UriSource(ContentResolver resolver, Uri uri) {
+            this.resolver = resolver;
+            this.uri = uri;
+        }
+
+        @Override
+        public String getKey() {
+            return uri.toString();
+        }
+
+        @Override
+        protected InputStream open() throws IOException {
+            InputStream stream = resolver.openInputStream(uri);
+            if (stream == null) {
+                throw new IOException("cannot open " + uri);
+            }
+            return stream;
+        }
+    }
+
+    private static class MappedFileSource extends ImageSource {
+
+        private final File file;
+        private MappedByteBuffer buffer;
+
+        MappedFileSource(File file) {
+            this.file = file;
+        }
+
+        /**
+         * 跟{@link FileSource}解码出来的像素一样，共用缓存
+         */
+        @Override
+        public String getKey() {
+            return "file://" + file.getAbsolutePath();
+        }
+
+        /**
+         * 每次返回映射区的一个独立视图，多个解码线程可以同时读
+         */
+        @Override
+        protected InputStream open() throws IOException {
+            return new ByteBufferInputStream(map().duplicate());
+        }
+
+        @Override
+        BitmapRegionDecoder newRegionDecoder() throws IOException {
+            return BitmapRegionDecoder.newInstance(file.getAbsolutePath(), false);
+        }
+
+        /**
+         * 映射建立之后文件就可以关闭，映射区一直有效直到被回收
+         */
+        private synchronized MappedByteBuffer map() throws IOException {
+            if (buffer == null) {
+                RandomAccessFile input = new RandomAccessFile(file, "r");
+                try {
+                    FileChannel channel = input.getChannel();
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } finally {
+                    input.close();
+                }
+            }
+            return buffer;
+        }
+    }
+
+    private static class StreamSource extends ImageSource {
+
+        private InputStream stream;
+
+        StreamSource(InputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public String getKey() {
+            return "stream:" + System.identityHashCode(this);
+        }
+
+        @Override
+        boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        protected synchronized InputStream open() throws IOException {
+            if (stream == null) {
+                throw new IOException("stream already consumed");
+            }
+            InputStream result = stream;
+            stream = null;
+            return result;
+        }
+    }
+
+    /**
+     * 从ByteBuffer读取的数据流，BitmapFactory每次只把一小段复制到自己的临时缓冲区里
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+        private int mark;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            mark = buffer.position();
+        }
+
+        @Override
+        public synchronized void reset() {
+            buffer.position(mark);
+        }
+    }
+}
@@ -3,7 +3,9 @@ package com.example.scalableimageview;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
@@ -13,8 +15,9 @@ import androidx.annotation.Nullable;
 public class MultiTouchView extends View {
 
     private static int IMAGE_WIDTH = (int)Utils.dpToPixel(200);
-    Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
     Bitmap bitmap;
+    BitmapLoader.Task decodeTask;
+    private Paint placeholderPaint = new Paint();
     private float offsetX;
     private float offsetY;
     private float downX;
@@ -25,72 +28,175 @@ public class MultiTouchView extends View {
     // 追踪手指的ID
     int trackingPointerId;
 
+    /**
+     * 手势引擎，这里只用到每根手指各自的回调
+     */
+    TouchInput touchInput = new TouchInput(new GestureEngine(new RelayListener()));
+
+    ViewMetrics metrics = new ViewMetrics();
+
+    /**
+     * 运动中用便宜的方式画图，停下来之后换成高质量
+     */
+    RenderQuality renderQuality = new RenderQuality(this, new RenderQuality.MotionState() {
+        @Override
+        public boolean isInMotion() {
+            return touchInput.isDragging();
+        }
+    });
+
+    /**
+     * 只重绘图片移动前后的范围
+     */
+    DirtyRegion dirtyRegion = new DirtyRegion(this, metrics);
+    private RectF drawnBounds = new RectF();
+
     public MultiTouchView(Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
-        bitmap = Utils.getAvatar(getResources(), IMAGE_WIDTH);
+        placeholderPaint.setColor(Color.LTGRAY);
+    }
+
+    /**
+     * 绘制耗时、触摸延迟和丢帧统计
+     */
+    public ViewMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 绘制质量策略，可以设置监听拿到每种模式下每帧的绘制耗时
+     */
+    public RenderQuality getRenderQuality() {
+        return renderQuality;
     }
 
+    /**
+     * 在后台线程解码图片，解码完成之前先画占位图
+     */
     @Override
-    public boolean onTouchEvent(MotionEvent event) {
-        switch (event.getActionMasked()) {
-            // 记录手指按下位置
-            // 更新图片偏移量
-            case MotionEvent.ACTION_DOWN:
-                // 按下之后记录跟踪手指的ID，刚开始的时候index为0
-                trackingPointerId = event.getPointerId(0);
-                downX = event.getX(0);
-                downY = event.getY(0);
-                originalX = offsetX;
-                originalY = offsetY;
-                break;
-            /**
-             * 图形跟随手指移动的方法
-             */
-            case MotionEvent.ACTION_MOVE:
-                // 获取正在移动手指的index
-                int index = event.findPointerIndex(trackingPointerId);
-                offsetX = event.getX(index) - downX + originalX;
-                offsetY = event.getY(index) - downY + originalY;
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        metrics.attach(this);
+        if (bitmap != null || decodeTask != null) {
+            return;
+        }
+        decodeTask = BitmapLoader.load(Utils.getAvatarSource(getResources()), IMAGE_WIDTH,
+                DecodeMode.AUTO, Utils.needsReadBack(this), new BitmapLoader.Callback() {
+            @Override
+            public void onLoaded(Bitmap result) {
+                decodeTask = null;
+                bitmap = result;
+                metrics.recordBitmap(result);
                 invalidate();
-                break;
-            case MotionEvent.ACTION_POINTER_DOWN:
-                // 获取新的手指按下之后，将要接管跟踪id
-                int actionIndex = event.getActionIndex();
-                trackingPointerId = event.getPointerId(actionIndex);
-                // 更新新手指位置
-                downX = event.getX(actionIndex);
-                downY = event.getY(actionIndex);
-                originalX = offsetX;
-                originalY = offsetY;
-                break;
-            case MotionEvent.ACTION_POINTER_UP:
-                // 每次抬起一个手指之后，就要用新按下的手指，或者是已经存在的手指去接管位置
-                // 每次用最后落下的手指接管，如果抬起的就是最后一个，那么就用倒数第二个手指接管
-                actionIndex = event.getActionIndex();
-                int pointId = event.getPointerId(actionIndex);
-                // 抬起的手指是正在追踪的手指，那么就要替换到新的已经落在屏幕上的手指上面
-                if (pointId == trackingPointerId) {
-                    int newIndex;
-                    if (actionIndex == event.getPointerCount() - 1) {
-                        newIndex = event.getPointerCount() - 2;
-                    } else {
-                        newIndex = event.getPointerCount() - 1;
-                    }
-                    trackingPointerId = event.getPointerId(newIndex);
-                    // 更新位置
-                    downX = event.getX(newIndex);
-                    downY = event.getY(newIndex);
-                    originalX = offsetX;
-                    originalY = offsetY;
-                }
-
-                break;
+            }
+        });
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        metrics.detach();
+        if (decodeTask != null) {
+            decodeTask.cancel();
+            decodeTask = null;
+        }
+        // 还给缓存，没人用的时候会进入复用池
+        renderQuality.release();
+        if (bitmap != null) {
+            BitmapCache.getInstance().release(bitmap);
+            bitmap = null;
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        metrics.onEvent(event);
+        float lastOffsetX = offsetX;
+        float lastOffsetY = offsetY;
+        touchInput.onTouchEvent(event);
+        if (offsetX != lastOffsetX || offsetY != lastOffsetY) {
+            invalidateImage();
         }
         return true;
     }
 
+    /**
+     * 让某根手指接管，从它当前的位置开始跟随
+     */
+    private void track(int pointerId, float x, float y) {
+        trackingPointerId = pointerId;
+        downX = x;
+        downY = y;
+        originalX = offsetX;
+        originalY = offsetY;
+    }
+
+    /**
+     * 接力：图片只跟着一根手指走，新按下的手指接管，正在跟随的手指抬起之后交给最后按下的那根
+     */
+    private class RelayListener extends GestureEngine.SimpleListener {
+
+        @Override
+        public void onPointerDown(int pointerId, float x, float y, long time) {
+            track(pointerId, x, y);
+        }
+
+        /**
+         * 图形跟随手指移动的方法
+         */
+        @Override
+        public void onPointerMove(int pointerId, float x, float y, long time) {
+            if (pointerId == trackingPointerId) {
+                offsetX = x - downX + originalX;
+                offsetY = y - downY + originalY;
+            }
+        }
+
+        @Override
+        public void onPointerUp(int pointerId, long time) {
+            // 抬起的手指是正在追踪的手指，那么就要替换到最后落下、还在屏幕上的手指上面
+            GestureEngine engine = touchInput.getEngine();
+            if (pointerId == trackingPointerId && engine.getPointerCount() > 0) {
+                int newId = engine.getPointerId(engine.getPointerCount() - 1);
+                track(newId, engine.getX(newId), engine.getY(newId));
+            }
+        }
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
-        canvas.drawBitmap(bitmap, offsetX, offsetY, paint);
+        metrics.beginDraw();
+        dirtyRegion.beginFrame();
+        renderQuality.beginFrame();
+        if (bitmap == null) {
+            canvas.drawRect(offsetX, offsetY, offsetX + IMAGE_WIDTH, offsetY + IMAGE_WIDTH, placeholderPaint);
+        } else {
+            renderQuality.drawBitmap(canvas, bitmap, offsetX, offsetY);
+        }
+        renderQuality.endFrame();
+        imageBounds(drawnBounds);
+        dirtyRegion.drawOverlay(canvas);
+        metrics.endDraw();
+    }
+
+    /**
+     * 上一帧画图片的位置和现在的位置都要重绘
+     */
+    private void invalidateImage() {
+        dirtyRegion.add(drawnBounds);
+        imageBounds(drawnBounds);
+        dirtyRegion.add(drawnBounds);
+        dirtyRegion.invalidate();
+    }
+
+    /**
+     * 图片（或者占位图）当前在View上的范围
+     */
+    private void imageBounds(RectF out) {
+        if (bitmap == null) {
+            out.set(offsetX, offsetY, offsetX + IMAGE_WIDTH, offsetY + IMAGE_WIDTH);
+        } else {
+            out.set(offsetX, offsetY, offsetX + bitmap.getWidth(), offsetY + bitmap.getHeight());
+        }
     }
 }
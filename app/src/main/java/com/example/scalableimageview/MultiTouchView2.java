@@ -3,79 +3,317 @@ package com.example.scalableimageview;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.util.AttributeSet;
+import android.util.SparseArray;
 import android.view.MotionEvent;
 import android.view.View;
 
 import androidx.annotation.Nullable;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 拼贴画布：可以放很多张图，每张图单独平移、放缩、旋转
+ * 手势开始的时候选中手指中心点下面最上面的一张图，提到最上面，之后手势只改这一张
+ * 只重绘被改动的图改动前后的范围，画的时候跳过和重绘范围不相交的图
+ */
 public class MultiTouchView2 extends View {
 
     private static int IMAGE_WIDTH = (int)Utils.dpToPixel(200);
-    Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-    Bitmap bitmap;
-    private float offsetX;
-    private float offsetY;
-    private float downX;
-    private float downY;
-    private float originalX;
-    private float originalY;
-
-    // 追踪手指的ID
-    int trackingPointerId;
+    private Paint placeholderPaint = new Paint();
+
+    /**
+     * 图片的位置、放缩、旋转和z顺序
+     */
+    private Scene scene = new Scene();
+
+    /**
+     * 每张图的来源和解码出来的Bitmap，下标是SceneItem的id
+     * 同一个来源只解码一次，每个来源持有一次缓存引用
+     */
+    private SparseArray<ImageSource> itemSources = new SparseArray<>();
+    private SparseArray<Bitmap> itemBitmaps = new SparseArray<>();
+    private Map<String, Bitmap> bitmaps = new HashMap<>();
+    private Map<String, BitmapLoader.Task> decodeTasks = new HashMap<>();
+
+    /**
+     * 手势引擎，以手指中心点为轴放缩、旋转，跟着中心点平移
+     */
+    private ItemGestureListener gestureListener = new ItemGestureListener();
+    TouchInput touchInput = new TouchInput(new GestureEngine(gestureListener));
+
+    ViewMetrics metrics = new ViewMetrics();
+
+    /**
+     * 运动中用便宜的方式画图，停下来之后换成高质量
+     */
+    RenderQuality renderQuality = new RenderQuality(this, new RenderQuality.MotionState() {
+        @Override
+        public boolean isInMotion() {
+            return touchInput.isDragging();
+        }
+    });
+
+    /**
+     * 只重绘图片变化前后的范围
+     */
+    DirtyRegion dirtyRegion = new DirtyRegion(this, metrics);
+    private float[] sceneDirty = new float[4];
+    private Rect clipBounds = new Rect();
+    private Matrix itemMatrix = new Matrix();
 
     public MultiTouchView2(Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
-        bitmap = Utils.getAvatar(getResources(), IMAGE_WIDTH);
+        placeholderPaint.setColor(Color.LTGRAY);
+        addImage(Utils.getAvatarSource(getResources()), IMAGE_WIDTH / 2f, IMAGE_WIDTH / 2f, 1, 0);
+    }
+
+    /**
+     * 绘制耗时、触摸延迟和丢帧统计
+     */
+    public ViewMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 绘制质量策略，可以设置监听拿到每种模式下每帧的绘制耗时
+     */
+    public RenderQuality getRenderQuality() {
+        return renderQuality;
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    /**
+     * 加一张图放在最上面，按IMAGE_WIDTH的宽度解码
+     * @param centerX 图片中心在View上的位置
+     * @param centerY 图片中心在View上的位置
+     * @param scale 相对解码尺寸的放缩
+     * @param rotation 顺时针旋转的角度
+     */
+    public SceneItem addImage(ImageSource source, float centerX, float centerY, float scale, float rotation) {
+        // 解码出来之前按正方形的占位图算
+        SceneItem item = scene.add(IMAGE_WIDTH, IMAGE_WIDTH, centerX, centerY, scale, rotation);
+        itemSources.put(item.getId(), source);
+        Bitmap bitmap = bitmaps.get(source.getKey());
+        if (bitmap != null) {
+            attachBitmap(item, bitmap);
+        } else {
+            load(source);
+        }
+        invalidateScene();
+        return item;
+    }
+
+    /**
+     * 去掉一张图，同一个来源没有别的图在用的话，Bitmap还给缓存
+     */
+    public void removeImage(SceneItem item) {
+        if (gestureListener.active == item) {
+            gestureListener.active = null;
+        }
+        scene.remove(item);
+        ImageSource source = itemSources.get(item.getId());
+        itemSources.remove(item.getId());
+        itemBitmaps.remove(item.getId());
+        if (source != null) {
+            releaseUnused(source.getKey());
+        }
+        invalidateScene();
+    }
+
+    /**
+     * 去掉所有图片，Bitmap还给缓存
+     */
+    public void clearImages() {
+        gestureListener.active = null;
+        scene.clear();
+        itemSources.clear();
+        itemBitmaps.clear();
+        releaseBitmaps();
+        invalidateScene();
     }
 
+    /**
+     * 在后台线程解码图片，解码完成之前先画占位图
+     */
     @Override
-    public boolean onTouchEvent(MotionEvent event) {
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        metrics.attach(this);
+        for (int i = 0; i < itemSources.size(); i++) {
+            load(itemSources.valueAt(i));
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        metrics.detach();
+        itemBitmaps.clear();
+        releaseBitmaps();
+        renderQuality.release();
+    }
+
+    private void load(final ImageSource source) {
+        final String key = source.getKey();
+        if (!isAttachedToWindow() || bitmaps.containsKey(key) || decodeTasks.containsKey(key)) {
+            return;
+        }
+        BitmapLoader.Task task = BitmapLoader.load(source, IMAGE_WIDTH, DecodeMode.AUTO, Utils.needsReadBack(this),
+                new BitmapLoader.Callback() {
+            @Override
+            public void onLoaded(Bitmap result) {
+                decodeTasks.remove(key);
+                bitmaps.put(key, result);
+                metrics.recordBitmap(result);
+                for (int i = 0; i < itemSources.size(); i++) {
+                    if (itemSources.valueAt(i).getKey().equals(key)) {
+                        attachBitmap(scene.findItem(itemSources.keyAt(i)), result);
+                    }
+                }
+                invalidateScene();
+            }
+        });
+        // 缓存命中的时候已经同步回调过了
+        if (task != null) {
+            decodeTasks.put(key, task);
+        }
+    }
+
+    /**
+     * 图片的尺寸换成Bitmap的实际尺寸
+     */
+    private void attachBitmap(SceneItem item, Bitmap bitmap) {
+        itemBitmaps.put(item.getId(), bitmap);
+        if (item.getWidth() != bitmap.getWidth() || item.getHeight() != bitmap.getHeight()) {
+            scene.setSize(item, bitmap.getWidth(), bitmap.getHeight());
+        }
+    }
 
-        // 求协同手指的中心点
-        float sumX = 0;
-        float sumY = 0;
-        // 判断是不是某根手指抬起，如果是，需要减去手指数量，因为他们同属于一个触摸事件
-        boolean isPointUp = event.getActionMasked() == MotionEvent.ACTION_POINTER_UP;
-        for (int i = 0; i < event.getPointerCount(); i++) {
-            if (!isPointUp || i != event.getActionIndex()) {
-                sumX += event.getX(i);
-                sumY += event.getY(i);
+    /**
+     * 某个来源已经没有图在用的时候，取消它的解码或者把Bitmap还给缓存
+     */
+    private void releaseUnused(String key) {
+        for (int i = 0; i < itemSources.size(); i++) {
+            if (itemSources.valueAt(i).getKey().equals(key)) {
+                return;
             }
         }
-        // 获取手指数量
-        int pointCount = event.getPointerCount();
-        if (isPointUp) {
-            pointCount--;
-        }
-        // 计算中心点坐标
-        float focusX = sumX / pointCount;
-        float focusY = sumY / pointCount;
-
-        switch (event.getActionMasked()) {
-            // 每次手指落下、多个手指落下、抬起其中一个的时候，更新手指落下位置 以及初始的位置
-            case MotionEvent.ACTION_DOWN:
-            case MotionEvent.ACTION_POINTER_DOWN:
-            case MotionEvent.ACTION_POINTER_UP:
-                downX = focusX;
-                downY = focusY;
-                originalX = offsetX;
-                originalY = offsetY;
-                break;
-
-                // 每次移动过后，计算出偏移量 然后重绘界面
-            case MotionEvent.ACTION_MOVE:
-                offsetX = focusX - downX + originalX;
-                offsetY = focusY - downY + originalY;
-                invalidate();
-                break;
+        BitmapLoader.Task task = decodeTasks.remove(key);
+        if (task != null) {
+            task.cancel();
+        }
+        Bitmap bitmap = bitmaps.remove(key);
+        if (bitmap != null) {
+            renderQuality.forget(bitmap);
+            BitmapCache.getInstance().release(bitmap);
+        }
+    }
+
+    private void releaseBitmaps() {
+        for (BitmapLoader.Task task : decodeTasks.values()) {
+            task.cancel();
+        }
+        decodeTasks.clear();
+        // 还给缓存，没人用的时候会进入复用池
+        Iterator<Bitmap> iterator = bitmaps.values().iterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            renderQuality.forget(bitmap);
+            BitmapCache.getInstance().release(bitmap);
+            iterator.remove();
         }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        metrics.onEvent(event);
+        touchInput.onTouchEvent(event);
+        invalidateScene();
         return true;
     }
 
+    /**
+     * 手势开始的时候选中中心点下面的图，之后只改这一张
+     * 第一根手指没按在图上的话，等后面的手指按下再按新的中心点找
+     */
+    private class ItemGestureListener extends GestureEngine.SimpleListener {
+
+        SceneItem active;
+
+        @Override
+        public void onPointerDown(int pointerId, float x, float y, long time) {
+            if (active != null) {
+                return;
+            }
+            GestureEngine engine = touchInput.getEngine();
+            active = scene.hitTest(engine.getFocusX(), engine.getFocusY());
+            if (active != null) {
+                scene.bringToFront(active);
+            }
+        }
+
+        @Override
+        public void onTransform(float focusX, float focusY, float dx, float dy, float scale, float rotation) {
+            if (active != null) {
+                scene.transform(active, focusX, focusY, dx, dy, scale, rotation);
+            }
+        }
+
+        @Override
+        public void onGestureEnd(boolean moved, float velocityX, float velocityY) {
+            active = null;
+        }
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
-        canvas.drawBitmap(bitmap, offsetX, offsetY, paint);
+        metrics.beginDraw();
+        dirtyRegion.beginFrame();
+        renderQuality.beginFrame();
+        // 按z顺序从下往上画，和这次重绘范围不相交的跳过
+        canvas.getClipBounds(clipBounds);
+        for (int i = 0; i < scene.getItemCount(); i++) {
+            SceneItem item = scene.getItem(i);
+            if (!item.intersects(clipBounds.left, clipBounds.top, clipBounds.right, clipBounds.bottom)) {
+                continue;
+            }
+            itemMatrix.setTranslate(-item.getWidth() / 2, -item.getHeight() / 2);
+            itemMatrix.postScale(item.getScale(), item.getScale());
+            itemMatrix.postRotate(item.getRotation());
+            itemMatrix.postTranslate(item.getCenterX(), item.getCenterY());
+            Bitmap bitmap = itemBitmaps.get(item.getId());
+            if (bitmap != null) {
+                renderQuality.drawBitmap(canvas, bitmap, itemMatrix);
+            } else {
+                int saveCount = canvas.save();
+                canvas.concat(itemMatrix);
+                canvas.drawRect(0, 0, item.getWidth(), item.getHeight(), placeholderPaint);
+                canvas.restoreToCount(saveCount);
+            }
+        }
+        renderQuality.endFrame();
+        dirtyRegion.drawOverlay(canvas);
+        metrics.endDraw();
+    }
+
+    /**
+     * 上一帧之后改动过的图，改动前后的范围都要重绘
+     */
+    private void invalidateScene() {
+        if (scene.takeDirty(sceneDirty)) {
+            // 多留一个像素给抗锯齿的边
+            dirtyRegion.add(sceneDirty[0] - 1, sceneDirty[1] - 1, sceneDirty[2] + 1, sceneDirty[3] + 1);
+            dirtyRegion.invalidate();
+        }
     }
 }
@@ -4,17 +4,57 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
 
 import androidx.annotation.Nullable;
 
+import java.io.File;
+
 public class MultiTouchView3 extends View {
 
     private Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
     private Path path = new Path();
 
+    /**
+     * 手指抬起之后笔迹保留下来，可以保存到文件，也可以从文件读进来
+     * 读进来的笔迹单独放一个Path，不跟正在画的笔迹混在一起
+     */
+    StrokeStorage.Recorder recorder;
+    StrokeStorage.Task loadTask;
+    private Path loadedPath = new Path();
+    private Path batchPath = new Path();
+    private boolean loadingStroke;
+    private float loadingX;
+    private float loadingY;
+    private StrokeReader.Listener loadListener = new LoadListener();
+
+    /**
+     * 增量绘制：已经画过的部分栅格化到离屏图层，每帧只画上次提交之后新增的一段
+     */
+    private boolean incremental = true;
+    private StrokeLayer layer = new StrokeLayer();
+    private Path livePath = new Path();
+
+    /**
+     * 预测一帧之后的位置，接在笔迹末尾，抵消显示延迟
+     */
+    private static final long PREDICTION_MILLIS = 16;
+    private static final float MAX_PREDICTION_DISTANCE = Utils.dpToPixel(24);
+    private PointPredictor predictor = new PointPredictor();
+    private float[] predicted = new float[2];
+    private boolean hasPrediction;
+
+    ViewMetrics metrics = new ViewMetrics();
+
+    /**
+     * 只重绘新增笔迹段和预测段的范围
+     */
+    DirtyRegion dirtyRegion = new DirtyRegion(this, metrics);
+    private RectF strokeBounds = new RectF();
+
     public MultiTouchView3(Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
     }
@@ -26,20 +66,143 @@ public class MultiTouchView3 extends View {
         paint.setStrokeJoin(Paint.Join.ROUND);
     }
 
+    /**
+     * 绘制耗时、触摸延迟和丢帧统计
+     */
+    public ViewMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 是否开启增量绘制，关闭之后每帧重画完整的Path，用来对比耗时
+     */
+    public void setIncrementalRendering(boolean incremental) {
+        this.incremental = incremental;
+        // 图层在下一次用到的时候按完整的Path重建
+        layer.release();
+        invalidate();
+    }
+
+    public boolean isIncrementalRendering() {
+        return incremental;
+    }
+
+    /**
+     * 开始把之后画的笔迹录制到文件，文件在后台写，已经存在的会被覆盖
+     */
+    public void startRecording(File file) {
+        stopRecording();
+        recorder = StrokeStorage.record(file);
+    }
+
+    /**
+     * 写完剩下的内容并关闭文件
+     */
+    public void stopRecording() {
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+    }
+
+    /**
+     * 在后台读取之前录制的笔迹，读一批画一批，加在现有笔迹的上面
+     */
+    public void loadStrokes(File file) {
+        cancelLoad();
+        loadTask = StrokeStorage.load(file, new StrokeStorage.Callback() {
+            @Override
+            public void onEvents(StrokeEvents events) {
+                if (loadingStroke) {
+                    // 上一批最后一笔还没结束，接着画
+                    batchPath.moveTo(loadingX, loadingY);
+                }
+                events.replay(loadListener);
+                commitBatch();
+            }
+        });
+    }
+
+    private void cancelLoad() {
+        if (loadTask != null) {
+            loadTask.cancel();
+            loadTask = null;
+        }
+        loadingStroke = false;
+    }
+
+    /**
+     * 清除所有笔迹
+     */
+    public void clearStrokes() {
+        cancelLoad();
+        path.reset();
+        loadedPath.reset();
+        livePath.rewind();
+        layer.clear();
+        hasPrediction = false;
+        invalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        metrics.attach(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        metrics.detach();
+        stopRecording();
+        cancelLoad();
+        layer.release();
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        metrics.onEvent(event);
         switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
                 path.moveTo(event.getX(), event.getY());
-                invalidate();
+                livePath.rewind();
+                livePath.moveTo(event.getX(), event.getY());
+                predictor.reset(event.getX(), event.getY(), event.getEventTime());
+                hasPrediction = false;
+                if (recorder != null) {
+                    recorder.onDown(0, event.getEventTime(), event.getX(), event.getY());
+                }
+                dirtyRegion.addPoint(event.getX(), event.getY(), strokeRadius());
+                dirtyRegion.invalidate();
                 break;
             case MotionEvent.ACTION_MOVE:
-                path.lineTo(event.getX(), event.getY());
-                invalidate();
+                // 高刷新率的屏幕上一个MOVE事件里会合并好几个采样点，按时间顺序全部连上
+                if (incremental) {
+                    commitLivePath();
+                }
+                // 新的一段从上一个点开始，上一次的预测段要擦掉
+                dirtyRegion.addPoint(predictor.getLastX(), predictor.getLastY(), strokeRadius());
+                invalidatePrediction();
+                int historySize = event.getHistorySize();
+                for (int h = 0; h < historySize; h++) {
+                    addPoint(event.getHistoricalX(h), event.getHistoricalY(h), event.getHistoricalEventTime(h));
+                }
+                addPoint(event.getX(), event.getY(), event.getEventTime());
+                hasPrediction = predictor.predict(PREDICTION_MILLIS, MAX_PREDICTION_DISTANCE, predicted);
+                invalidatePrediction();
+                dirtyRegion.invalidate();
                 break;
             case MotionEvent.ACTION_UP:
-                path.reset();
-                invalidate();
+                // 笔迹保留，最后一段画到图层上，只擦掉预测段
+                if (incremental) {
+                    commitLivePath();
+                }
+                invalidatePrediction();
+                hasPrediction = false;
+                if (recorder != null) {
+                    recorder.onUp(0, event.getEventTime());
+                }
+                dirtyRegion.invalidate();
                 break;
         }
         return true;
@@ -48,6 +211,118 @@ public class MultiTouchView3 extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        canvas.drawPath(path, paint);
+        metrics.beginDraw();
+        dirtyRegion.beginFrame();
+        if (incremental) {
+            prepareLayer();
+            layer.draw(canvas);
+            canvas.drawPath(livePath, paint);
+        } else {
+            canvas.drawPath(loadedPath, paint);
+            canvas.drawPath(path, paint);
+        }
+        // 预测的部分只画出来，不进Path，下一个事件到来时被真实的点代替
+        if (hasPrediction) {
+            canvas.drawLine(predictor.getLastX(), predictor.getLastY(), predicted[0], predicted[1], paint);
+        }
+        dirtyRegion.drawOverlay(canvas);
+        metrics.endDraw();
+    }
+
+    private void addPoint(float x, float y, long time) {
+        path.lineTo(x, y);
+        if (incremental) {
+            livePath.lineTo(x, y);
+        }
+        predictor.add(x, y, time);
+        if (recorder != null) {
+            recorder.onMove(0, time, x, y);
+        }
+        dirtyRegion.addPoint(x, y, strokeRadius());
+    }
+
+    /**
+     * 预测段的末端，起点就是最后一个真实的点，已经标记过
+     */
+    private void invalidatePrediction() {
+        if (hasPrediction) {
+            dirtyRegion.addPoint(predicted[0], predicted[1], strokeRadius());
+        }
+    }
+
+    private float strokeRadius() {
+        return paint.getStrokeWidth() / 2;
+    }
+
+    /**
+     * 把上一个事件新增的一段画到图层上，之后从最后一个点重新开始
+     */
+    private void commitLivePath() {
+        prepareLayer();
+        layer.drawPath(livePath, paint);
+        restartLivePath();
+    }
+
+    /**
+     * 图层是新分配的话内容是空的，把完整的Path画上去
+     */
+    private void prepareLayer() {
+        if (layer.ensureSize(getWidth(), getHeight())) {
+            layer.drawPath(loadedPath, paint);
+            layer.drawPath(path, paint);
+            restartLivePath();
+        }
+    }
+
+    private void restartLivePath() {
+        livePath.rewind();
+        if (!path.isEmpty()) {
+            livePath.moveTo(predictor.getLastX(), predictor.getLastY());
+        }
+    }
+
+    /**
+     * 这一批读出来的笔迹画到图层上，再并入loadedPath
+     */
+    private void commitBatch() {
+        batchPath.computeBounds(strokeBounds, false);
+        strokeBounds.inset(-strokeRadius(), -strokeRadius());
+        dirtyRegion.add(strokeBounds);
+        if (incremental) {
+            prepareLayer();
+            layer.drawPath(batchPath, paint);
+        }
+        loadedPath.addPath(batchPath);
+        batchPath.rewind();
+        dirtyRegion.invalidate();
+    }
+
+    /**
+     * 把文件里读出来的事件连成Path，录制的时候只有一根手指
+     */
+    private class LoadListener implements StrokeReader.Listener {
+
+        @Override
+        public void onDown(int pointerId, long time, float x, float y) {
+            batchPath.moveTo(x, y);
+            loadingStroke = true;
+            loadingX = x;
+            loadingY = y;
+        }
+
+        @Override
+        public void onMove(int pointerId, long time, float x, float y) {
+            if (!loadingStroke) {
+                return;
+            }
+            batchPath.lineTo(x, y);
+            loadingX = x;
+            loadingY = y;
+        }
+
+        @Override
+        public void onUp(int pointerId, long time) {
+            loadingStroke = false;
+        }
     }
 }
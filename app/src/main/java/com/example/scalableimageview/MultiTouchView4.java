@@ -3,19 +3,84 @@ package com.example.scalableimageview;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.MotionEvent;
 import android.view.View;
 
 import androidx.annotation.Nullable;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class MultiTouchView4 extends View {
 
     private Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
 
-    private SparseArray<Path> paths = new SparseArray<>();
+    /**
+     * 每根手指一条笔迹，采样点化简之后存在float数组里，画的时候再平滑成曲线
+     */
+    private static final float STROKE_MIN_DISTANCE = Utils.dpToPixel(2);
+    private static final float STROKE_TOLERANCE = Utils.dpToPixel(0.5f);
+    private static final float STROKE_ANGLE_TOLERANCE = 10;
+    private SparseArray<Stroke> strokes = new SparseArray<>();
+
+    /**
+     * 手指抬起之后笔迹保留下来，可以保存到文件，也可以从文件读进来
+     */
+    private ArrayList<Stroke> finishedStrokes = new ArrayList<>();
+    StrokeStorage.Recorder recorder;
+    StrokeStorage.Task loadTask;
+    private SparseArray<Stroke> loadingStrokes = new SparseArray<>();
+    private StrokeReader.Listener loadListener = new LoadListener();
+
+    /**
+     * 画完的笔迹按加上笔宽之后的外接矩形建索引，id是在finishedStrokes里的下标
+     * 重画的时候只画和裁剪范围相交的，点击和框选也不用挨个遍历
+     */
+    private SpatialIndex strokeIndex = new SpatialIndex();
+    private float[] strokeBounds = new float[4];
+    private Rect clipBounds = new Rect();
+    private StrokeDrawer strokeDrawer = new StrokeDrawer();
+    private HitCollector hitCollector = new HitCollector();
+
+    /**
+     * 增量绘制：已经不会再变化的曲线段栅格化到离屏图层，每帧只画每根手指末尾还在变化的几段
+     * 画完的笔迹整条留在图层上
+     */
+    private boolean incremental = true;
+    private StrokeLayer layer = new StrokeLayer();
+    private SparseIntArray committedPieces = new SparseIntArray();
+    private SparseArray<StrokePath> livePaths = new SparseArray<>();
+    private StrokePath scratchPath = new StrokePath();
+    private boolean layerStale;
+
+    /**
+     * 每根手指的位置预测，预测一帧之后的位置接在笔迹末尾，抵消显示延迟
+     */
+    private static final long PREDICTION_MILLIS = 16;
+    private static final float MAX_PREDICTION_DISTANCE = Utils.dpToPixel(24);
+    private SparseArray<PointPredictor> predictors = new SparseArray<>();
+    private float[] predicted = new float[2];
+
+    ViewMetrics metrics = new ViewMetrics();
+
+    /**
+     * 只重绘新增笔迹段和预测段的范围
+     */
+    DirtyRegion dirtyRegion = new DirtyRegion(this, metrics);
+
+    /**
+     * 上一帧画出来的预测段的范围，下一个事件到来时要擦掉
+     */
+    private RectF predictionBounds = new RectF();
+
+    TouchInput touchInput = new TouchInput(new GestureEngine(new StrokeListener()));
 
     public MultiTouchView4(Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
@@ -28,47 +93,416 @@ public class MultiTouchView4 extends View {
         paint.setStrokeJoin(Paint.Join.ROUND);
     }
 
+    /**
+     * 绘制耗时、触摸延迟和丢帧统计
+     */
+    public ViewMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 是否开启增量绘制，关闭之后每帧重画所有完整的笔迹，用来对比耗时
+     */
+    public void setIncrementalRendering(boolean incremental) {
+        this.incremental = incremental;
+        layerStale = true;
+        invalidate();
+    }
+
+    public boolean isIncrementalRendering() {
+        return incremental;
+    }
+
+    /**
+     * 开始把之后画的笔迹录制到文件，文件在后台写，已经存在的会被覆盖
+     */
+    public void startRecording(File file) {
+        stopRecording();
+        recorder = StrokeStorage.record(file);
+    }
+
+    /**
+     * 写完剩下的内容并关闭文件
+     */
+    public void stopRecording() {
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+    }
+
+    /**
+     * 在后台读取之前录制的笔迹，读一批画一批，加在现有笔迹的上面
+     */
+    public void loadStrokes(File file) {
+        cancelLoad();
+        loadTask = StrokeStorage.load(file, new StrokeStorage.Callback() {
+            @Override
+            public void onEvents(StrokeEvents events) {
+                events.replay(loadListener);
+                dirtyRegion.invalidate();
+            }
+        });
+    }
+
+    private void cancelLoad() {
+        if (loadTask != null) {
+            loadTask.cancel();
+            loadTask = null;
+        }
+        loadingStrokes.clear();
+    }
+
+    /**
+     * 清除所有画完的笔迹，正在画的不受影响
+     */
+    public void clearStrokes() {
+        cancelLoad();
+        finishedStrokes.clear();
+        strokeIndex.clear();
+        layerStale = true;
+        invalidate();
+    }
+
+    /**
+     * 某个点上最后画的一条笔迹
+     * @param slop 除了笔宽之外还允许偏离多少
+     * @return 没有的话返回null
+     */
+    @Nullable
+    public Stroke findStrokeAt(float x, float y, float slop) {
+        float maxDistance = strokeRadius() + slop;
+        hitCollector.count = 0;
+        // 索引里的范围已经加上了笔宽，这里只需要再扩大slop
+        strokeIndex.search(x - slop, y - slop, x + slop, y + slop, hitCollector);
+        int found = -1;
+        for (int i = 0; i < hitCollector.count; i++) {
+            int id = hitCollector.ids[i];
+            if (id > found && finishedStrokes.get(id).distanceTo(x, y) <= maxDistance) {
+                found = id;
+            }
+        }
+        return found < 0 ? null : finishedStrokes.get(found);
+    }
+
+    /**
+     * 范围和rect相交的所有画完的笔迹，按画的先后顺序
+     */
+    public void findStrokes(RectF rect, List<Stroke> out) {
+        hitCollector.count = 0;
+        strokeIndex.search(rect.left, rect.top, rect.right, rect.bottom, hitCollector);
+        Arrays.sort(hitCollector.ids, 0, hitCollector.count);
+        for (int i = 0; i < hitCollector.count; i++) {
+            out.add(finishedStrokes.get(hitCollector.ids[i]));
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        metrics.attach(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        metrics.detach();
+        stopRecording();
+        cancelLoad();
+        layer.release();
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        switch (event.getActionMasked()) {
-
-            // 单指或者多个指头落下 绘制某个路径 并创建相应的Path，装进数组里面
-            case MotionEvent.ACTION_DOWN:
-            case MotionEvent.ACTION_POINTER_DOWN:
-                int actionIndex = event.getActionIndex();
-                int pointerId = event.getPointerId(actionIndex);
-                Path path = new Path();
-                path.moveTo(event.getX(actionIndex), event.getY(actionIndex));
-                paths.append(pointerId, path);
-                invalidate();
-                break;
-
-                // 单指或者多个指头移动，遍历数组，进行绘制
-            case MotionEvent.ACTION_MOVE:
-                for (int i = 0; i < event.getPointerCount(); i++) {
-                    pointerId = event.getPointerId(i);
-                    path = paths.get(pointerId);
-                    path.lineTo(event.getX(i), event.getY(i));
+        metrics.onEvent(event);
+        boolean move = event.getActionMasked() == MotionEvent.ACTION_MOVE;
+        float radius = strokeRadius();
+        if (move) {
+            // 末尾还在变化的几段，变化前后的范围都要重绘
+            dirtyRegion.add(predictionBounds);
+            markActiveStrokes(radius);
+        }
+        // 按下创建笔迹，移动的时候合并的采样点按时间顺序逐个加进去，抬起或者取消的时候笔迹画完
+        touchInput.onTouchEvent(event);
+        if (move) {
+            markActiveStrokes(radius);
+            // 这一帧要画的预测段
+            for (int i = 0; i < predictors.size(); i++) {
+                if (predictors.valueAt(i).predict(PREDICTION_MILLIS, MAX_PREDICTION_DISTANCE, predicted)) {
+                    dirtyRegion.addPoint(predicted[0], predicted[1], radius);
                 }
-                invalidate();
-                break;
-
-                // 单指抬起或者多指抬起 清除某个绘制路径
-            case MotionEvent.ACTION_UP:
-            case MotionEvent.ACTION_POINTER_UP:
-                paths.remove(event.getPointerId(event.getActionIndex()));
-                invalidate();
-                break;
+            }
+            if (incremental) {
+                commitStablePieces();
+            }
         }
+        dirtyRegion.invalidate();
         return true;
     }
 
+    private void markActiveStrokes(float radius) {
+        for (int i = 0; i < strokes.size(); i++) {
+            int pointerId = strokes.keyAt(i);
+            markStroke(strokes.valueAt(i), committedPieces.get(pointerId), radius);
+        }
+    }
+
+    /**
+     * 每根手指一条笔迹
+     */
+    private class StrokeListener extends GestureEngine.SimpleListener {
+
+        @Override
+        public void onPointerDown(int pointerId, float x, float y, long time) {
+            startStroke(pointerId, x, y, time);
+        }
+
+        @Override
+        public void onPointerMove(int pointerId, float x, float y, long time) {
+            Stroke stroke = strokes.get(pointerId);
+            if (stroke != null) {
+                addPoint(pointerId, stroke, predictors.get(pointerId), x, y, time);
+            }
+        }
+
+        @Override
+        public void onPointerUp(int pointerId, long time) {
+            finishStroke(pointerId, time);
+        }
+    }
+
+    private void startStroke(int pointerId, float x, float y, long time) {
+        Stroke stroke = new Stroke(STROKE_MIN_DISTANCE, STROKE_TOLERANCE, STROKE_ANGLE_TOLERANCE);
+        stroke.add(x, y);
+        strokes.append(pointerId, stroke);
+        committedPieces.put(pointerId, 0);
+        StrokePath livePath = new StrokePath();
+        stroke.build(livePath);
+        livePaths.append(pointerId, livePath);
+        PointPredictor predictor = new PointPredictor();
+        predictor.reset(x, y, time);
+        predictors.append(pointerId, predictor);
+        if (recorder != null) {
+            recorder.onDown(pointerId, time, x, y);
+        }
+        dirtyRegion.addPoint(x, y, strokeRadius());
+    }
+
+    private void addPoint(int pointerId, Stroke stroke, PointPredictor predictor, float x, float y, long time) {
+        stroke.add(x, y);
+        predictor.add(x, y, time);
+        if (recorder != null) {
+            recorder.onMove(pointerId, time, x, y);
+        }
+    }
+
+    /**
+     * 笔迹末尾还没栅格化的几段画到图层上，之后整条笔迹都在图层里
+     */
+    private void finishStroke(int pointerId, long time) {
+        Stroke stroke = strokes.get(pointerId);
+        if (stroke == null) {
+            return;
+        }
+        // 预测段要擦掉，末尾几段从livePath挪到图层，位置不变
+        dirtyRegion.add(predictionBounds);
+        if (incremental && !layerStale) {
+            scratchPath.rewind();
+            stroke.build(scratchPath, committedPieces.get(pointerId), stroke.getPieceCount());
+            layer.drawPath(scratchPath, paint);
+        }
+        addFinishedStroke(stroke);
+        strokes.remove(pointerId);
+        committedPieces.delete(pointerId);
+        livePaths.remove(pointerId);
+        predictors.remove(pointerId);
+        if (recorder != null) {
+            recorder.onUp(pointerId, time);
+        }
+    }
+
+    private void addFinishedStroke(Stroke stroke) {
+        finishedStrokes.add(stroke);
+        stroke.getBounds(strokeBounds);
+        float radius = strokeRadius();
+        strokeIndex.insert(finishedStrokes.size() - 1, strokeBounds[0] - radius, strokeBounds[1] - radius,
+                strokeBounds[2] + radius, strokeBounds[3] + radius);
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        metrics.beginDraw();
+        dirtyRegion.beginFrame();
         // 取值 绘制
-        for (int i = 0; i < paths.size(); i++) {
-            canvas.drawPath(paths.valueAt(i), paint);
+        if (incremental) {
+            prepareLayer();
+            layer.draw(canvas);
+            for (int i = 0; i < livePaths.size(); i++) {
+                canvas.drawPath(livePaths.valueAt(i), paint);
+            }
+        } else {
+            // 只画和这次重绘范围相交的笔迹
+            canvas.getClipBounds(clipBounds);
+            strokeDrawer.canvas = canvas;
+            strokeIndex.search(clipBounds.left, clipBounds.top, clipBounds.right, clipBounds.bottom, strokeDrawer);
+            strokeDrawer.canvas = null;
+            for (int i = 0; i < strokes.size(); i++) {
+                scratchPath.rewind();
+                strokes.valueAt(i).build(scratchPath);
+                canvas.drawPath(scratchPath, paint);
+            }
+        }
+        // 预测的部分只画出来，不进笔迹，下一个事件到来时被真实的点代替
+        predictionBounds.setEmpty();
+        float radius = strokeRadius();
+        for (int i = 0; i < predictors.size(); i++) {
+            PointPredictor predictor = predictors.valueAt(i);
+            if (predictor.predict(PREDICTION_MILLIS, MAX_PREDICTION_DISTANCE, predicted)) {
+                canvas.drawLine(predictor.getLastX(), predictor.getLastY(), predicted[0], predicted[1], paint);
+                addPredictionBounds(predicted[0], predicted[1], radius);
+            }
+        }
+        dirtyRegion.drawOverlay(canvas);
+        metrics.endDraw();
+    }
+
+    private void addPredictionBounds(float x, float y, float radius) {
+        if (predictionBounds.isEmpty()) {
+            predictionBounds.set(x - radius, y - radius, x + radius, y + radius);
+        } else {
+            predictionBounds.union(x - radius, y - radius, x + radius, y + radius);
+        }
+    }
+
+    private float strokeRadius() {
+        return paint.getStrokeWidth() / 2;
+    }
+
+    /**
+     * 标记从第fromPiece段开始到末尾的范围，二次曲线不会超出控制点围成的范围
+     */
+    private void markStroke(Stroke stroke, int fromPiece, float radius) {
+        for (int i = Math.max(0, fromPiece - 1); i < stroke.getPointCount(); i++) {
+            dirtyRegion.addPoint(stroke.getX(i), stroke.getY(i), radius);
+        }
+    }
+
+    /**
+     * 把每条笔迹新近稳定下来的曲线段画到图层上，末尾还在变化的几段放进livePath每帧画
+     */
+    private void commitStablePieces() {
+        prepareLayer();
+        for (int i = 0; i < strokes.size(); i++) {
+            int pointerId = strokes.keyAt(i);
+            Stroke stroke = strokes.valueAt(i);
+            int committed = committedPieces.get(pointerId);
+            int stable = stroke.getStablePieceCount();
+            if (stable > committed) {
+                scratchPath.rewind();
+                stroke.build(scratchPath, committed, stable);
+                layer.drawPath(scratchPath, paint);
+                committed = stable;
+                committedPieces.put(pointerId, committed);
+            }
+            StrokePath livePath = livePaths.get(pointerId);
+            livePath.rewind();
+            stroke.build(livePath, committed, stroke.getPieceCount());
+        }
+    }
+
+    /**
+     * 图层是新分配的，或者有笔迹被擦掉，按画完的笔迹和正在画的笔迹已经稳定的部分重建
+     */
+    private void prepareLayer() {
+        if (layer.ensureSize(getWidth(), getHeight()) || layerStale) {
+            layer.clear();
+            strokeIndex.search(0, 0, getWidth(), getHeight(), strokeDrawer);
+            for (int i = 0; i < strokes.size(); i++) {
+                int pointerId = strokes.keyAt(i);
+                Stroke stroke = strokes.valueAt(i);
+                int stable = stroke.getStablePieceCount();
+                scratchPath.rewind();
+                stroke.build(scratchPath, 0, stable);
+                layer.drawPath(scratchPath, paint);
+                committedPieces.put(pointerId, stable);
+                StrokePath livePath = livePaths.get(pointerId);
+                livePath.rewind();
+                stroke.build(livePath, stable, stroke.getPieceCount());
+            }
+            layerStale = false;
+        }
+    }
+
+    /**
+     * 把文件里读出来的笔迹加进来，每条读完整之后直接画到图层上
+     */
+    private class LoadListener implements StrokeReader.Listener {
+
+        @Override
+        public void onDown(int pointerId, long time, float x, float y) {
+            Stroke stroke = new Stroke(STROKE_MIN_DISTANCE, STROKE_TOLERANCE, STROKE_ANGLE_TOLERANCE);
+            stroke.add(x, y);
+            loadingStrokes.put(pointerId, stroke);
+        }
+
+        @Override
+        public void onMove(int pointerId, long time, float x, float y) {
+            Stroke stroke = loadingStrokes.get(pointerId);
+            if (stroke != null) {
+                stroke.add(x, y);
+            }
+        }
+
+        @Override
+        public void onUp(int pointerId, long time) {
+            Stroke stroke = loadingStrokes.get(pointerId);
+            if (stroke == null) {
+                return;
+            }
+            loadingStrokes.remove(pointerId);
+            addFinishedStroke(stroke);
+            markStroke(stroke, 0, strokeRadius());
+            if (incremental && !layerStale) {
+                scratchPath.rewind();
+                stroke.build(scratchPath);
+                layer.drawPath(scratchPath, paint);
+            }
+        }
+    }
+
+    /**
+     * 把索引查出来的笔迹画到画布上，canvas为空的时候画到图层上
+     * 所有笔迹用同一个画笔，先后顺序不影响结果
+     */
+    private class StrokeDrawer implements SpatialIndex.Visitor {
+        Canvas canvas;
+
+        @Override
+        public void visit(int id) {
+            scratchPath.rewind();
+            finishedStrokes.get(id).build(scratchPath);
+            if (canvas != null) {
+                canvas.drawPath(scratchPath, paint);
+            } else {
+                layer.drawPath(scratchPath, paint);
+            }
+        }
+    }
+
+    /**
+     * 收集索引查出来的id，数组复用
+     */
+    private static class HitCollector implements SpatialIndex.Visitor {
+        int[] ids = new int[16];
+        int count;
+
+        @Override
+        public void visit(int id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
         }
     }
 }
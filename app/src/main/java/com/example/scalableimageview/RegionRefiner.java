@@ -0,0 +1,221 @@
+package com.example.scalableimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * 放大之后的清晰化
+ * 手势、放缩动画、惯性滑动都停下来一小段时间之后，按原图分辨率重新解码当前可见的区域，画在模糊的图上面
+ * 清晰图按图片坐标画在原来的位置上，替换的时候画面不会跳动
+ * 图片一动就取消还没完成的解码，等再次停下来重新开始
+ */
+class RegionRefiner {
+
+    /**
+     * 停下来之后等这么久再解码，连续操作的时候不会反复解码
+     */
+    private static final long SETTLE_DELAY_MILLIS = 150;
+
+    private final ScalableImageView view;
+
+    /**
+     * 当前显示的清晰图以及它在第0级图片坐标系里的位置
+     */
+    private Bitmap refined;
+    private final RectF refinedRect = new RectF();
+    private int refinedSampleSize;
+
+    private BitmapLoader.Task task;
+
+    /**
+     * 每次取消加一，解码完成的时候对不上的结果直接丢掉
+     */
+    private int generation;
+
+    private final Matrix inverse = new Matrix();
+    private final RectF visible = new RectF();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * 只在解码线程访问，按图片来源缓存
+     */
+    private BitmapRegionDecoder decoder;
+    private ImageSource decoderSource;
+
+    private final Runnable refineRunner = new Runnable() {
+        @Override
+        public void run() {
+            refine();
+        }
+    };
+
+    RegionRefiner(ScalableImageView view) {
+        this.view = view;
+    }
+
+    /**
+     * 图片停下来了，等一会再解码
+     */
+    void schedule() {
+        view.removeCallbacks(refineRunner);
+        view.postDelayed(refineRunner, SETTLE_DELAY_MILLIS);
+    }
+
+    /**
+     * 图片开始动了，取消还在等待和正在解码的清晰化，已经显示的清晰图保留
+     */
+    void cancel() {
+        view.removeCallbacks(refineRunner);
+        if (task != null) {
+            task.cancel();
+            task = null;
+            generation++;
+        }
+    }
+
+    /**
+     * 换图或者View移除的时候调用，清晰图还给复用池
+     */
+    void clear() {
+        cancel();
+        generation++;
+        if (refined != null) {
+            BitmapPool.getInstance().put(refined);
+            refined = null;
+        }
+    }
+
+    /**
+     * View移除的时候调用，在解码线程释放解码器
+     */
+    void release() {
+        clear();
+        BitmapLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                releaseDecoder();
+            }
+        });
+    }
+
+    /**
+     * @param canvas 已经变换到第0级图片坐标系的画布
+     */
+    void draw(Canvas canvas) {
+        if (refined != null) {
+            canvas.drawBitmap(refined, null, refinedRect, paint);
+        }
+    }
+
+    private void refine() {
+        Bitmap base = view.bitmap;
+        final ImageSource source = view.source;
+        if (base == null || view.tileRenderer != null || source == null || !source.isProbed()) {
+            return;
+        }
+        // View的范围映射回第0级图片坐标系，就是可见区域
+        if (!view.transform.getMatrix().invert(inverse)) {
+            return;
+        }
+        visible.set(0, 0, view.getWidth(), view.getHeight());
+        inverse.mapRect(visible);
+        if (!visible.intersect(0, 0, base.getWidth(), base.getHeight())) {
+            return;
+        }
+
+        // 每个屏幕像素对应多少原图像素，取不超过它的最大2的幂作为采样率
+        final float baseToImage = (float) source.getWidth() / base.getWidth();
+        float imagePixelsPerScreenPixel = baseToImage / view.transform.getScale();
+        int sampleSize = 1;
+        while (sampleSize * 2 <= imagePixelsPerScreenPixel) {
+            sampleSize *= 2;
+        }
+        // 第0级已经够清晰，或者已经显示的清晰图就能覆盖
+        if (sampleSize >= baseToImage
+                || (refined != null && refinedSampleSize == sampleSize && refinedRect.contains(visible))) {
+            return;
+        }
+
+        final Rect region = new Rect(
+                Math.max(0, (int) Math.floor(visible.left * baseToImage)),
+                Math.max(0, (int) Math.floor(visible.top * baseToImage)),
+                Math.min(source.getWidth(), (int) Math.ceil(visible.right * baseToImage)),
+                Math.min(source.getHeight(), (int) Math.ceil(visible.bottom * baseToImage)));
+        if (region.isEmpty()) {
+            return;
+        }
+        final int regionSampleSize = sampleSize;
+        final int expected = ++generation;
+        task = BitmapLoader.load(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws IOException {
+                return decodeRegion(source, region, regionSampleSize);
+            }
+        }, new BitmapLoader.Callback() {
+            @Override
+            public void onLoaded(Bitmap bitmap) {
+                task = null;
+                if (expected != generation) {
+                    BitmapPool.getInstance().put(bitmap);
+                    return;
+                }
+                if (refined != null) {
+                    BitmapPool.getInstance().put(refined);
+                }
+                refined = bitmap;
+                refinedSampleSize = regionSampleSize;
+                refinedRect.set(region.left / baseToImage, region.top / baseToImage,
+                        region.right / baseToImage, region.bottom / baseToImage);
+                view.invalidate();
+            }
+        });
+    }
+
+    @WorkerThread
+    private synchronized Bitmap decodeRegion(ImageSource source, Rect region, int sampleSize) throws IOException {
+        if (decoder == null || decoderSource != source) {
+            releaseDecoder();
+            decoder = source.newRegionDecoder();
+            decoderSource = source;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inBitmap = BitmapPool.getInstance().get(
+                divideCeil(region.width(), sampleSize),
+                divideCeil(region.height(), sampleSize),
+                Bitmap.Config.ARGB_8888);
+        try {
+            return decoder.decodeRegion(region, options);
+        } catch (IllegalArgumentException e) {
+            // 复用的Bitmap尺寸不合适，放回去重新分配
+            BitmapPool.getInstance().put(options.inBitmap);
+            options.inBitmap = null;
+            return decoder.decodeRegion(region, options);
+        }
+    }
+
+    @WorkerThread
+    private synchronized void releaseDecoder() {
+        if (decoder != null) {
+            decoder.recycle();
+            decoder = null;
+            decoderSource = null;
+        }
+    }
+
+    private static int divideCeil(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
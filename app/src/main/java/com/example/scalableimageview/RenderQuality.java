@@ -0,0 +1,215 @@
+package com.example.scalableimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.view.View;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 绘制质量策略
+ * 图片在动的时候（手势、惯性滑动、放缩动画）用BitmapShader填充矩形，只做双线性过滤，不做抗锯齿和抖动
+ * 停下来一小段时间之后整个重画一次，换成完整的过滤
+ * 每个Bitmap的Shader创建一次之后缓存起来，动起来的时候不分配对象
+ *
+ * 每一帧的绘制耗时按模式统计，可以通过监听拿到
+ */
+public class RenderQuality {
+
+    public enum Mode {
+        /**
+         * 运动中，BitmapShader + 双线性过滤
+         */
+        MOTION,
+        /**
+         * 静止，drawBitmap + 抗锯齿、过滤、抖动
+         */
+        STILL
+    }
+
+    /**
+     * 每画完一帧回调一次，在主线程
+     */
+    public interface Listener {
+        void onFrameDrawn(Mode mode, long drawNanos);
+    }
+
+    /**
+     * View自己判断当前是不是在动
+     */
+    interface MotionState {
+        boolean isInMotion();
+    }
+
+    /**
+     * 停下来之后等这么久再换成高质量，手指稍微停顿的时候不会来回切换
+     */
+    private static final long STILL_DELAY_MILLIS = 100;
+
+    /**
+     * 缓存的Shader数量上限，超过之后全部丢掉重新创建，不会一直持有已经换掉的Bitmap
+     */
+    private static final int MAX_SHADERS = 16;
+
+    private final View view;
+    private final MotionState state;
+    private Listener listener;
+    private boolean enabled = true;
+
+    private final Paint stillPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+    private final Paint motionPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Map<Bitmap, BitmapShader> shaders = new IdentityHashMap<>();
+    private final Matrix rectMatrix = new Matrix();
+    private final RectF bitmapRect = new RectF();
+
+    private Mode mode = Mode.STILL;
+    private long frameStartNanos;
+    private final long[] totalNanos = new long[Mode.values().length];
+    private final int[] frames = new int[Mode.values().length];
+
+    private final Runnable stillCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (state.isInMotion()) {
+                view.postDelayed(this, STILL_DELAY_MILLIS);
+            } else {
+                view.invalidate();
+            }
+        }
+    };
+
+    RenderQuality(View view, MotionState state) {
+        this.view = view;
+        this.state = state;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 关闭之后一直用高质量绘制，用来对比耗时
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        view.invalidate();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 某个模式下每帧的平均绘制耗时，没画过的时候是0
+     */
+    public long getAverageDrawNanos(Mode mode) {
+        int count = frames[mode.ordinal()];
+        return count == 0 ? 0 : totalNanos[mode.ordinal()] / count;
+    }
+
+    public int getFrameCount(Mode mode) {
+        return frames[mode.ordinal()];
+    }
+
+    public void reset() {
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = 0;
+            totalNanos[i] = 0;
+        }
+    }
+
+    /**
+     * onDraw开始的时候调用，决定这一帧用哪种模式
+     */
+    Mode beginFrame() {
+        mode = enabled && state.isInMotion() ? Mode.MOTION : Mode.STILL;
+        frameStartNanos = System.nanoTime();
+        return mode;
+    }
+
+    /**
+     * onDraw结束的时候调用，运动中画的帧要在停下来之后重画
+     */
+    void endFrame() {
+        long drawNanos = System.nanoTime() - frameStartNanos;
+        totalNanos[mode.ordinal()] += drawNanos;
+        frames[mode.ordinal()]++;
+        if (mode == Mode.MOTION) {
+            view.removeCallbacks(stillCheck);
+            view.postDelayed(stillCheck, STILL_DELAY_MILLIS);
+        }
+        if (listener != null) {
+            listener.onFrameDrawn(mode, drawNanos);
+        }
+    }
+
+    void drawBitmap(Canvas canvas, Bitmap bitmap, float left, float top) {
+        if (mode == Mode.STILL) {
+            canvas.drawBitmap(bitmap, left, top, stillPaint);
+            return;
+        }
+        int saveCount = canvas.save();
+        canvas.translate(left, top);
+        fill(canvas, bitmap);
+        canvas.restoreToCount(saveCount);
+    }
+
+    void drawBitmap(Canvas canvas, Bitmap bitmap, RectF dst) {
+        if (mode == Mode.STILL) {
+            canvas.drawBitmap(bitmap, null, dst, stillPaint);
+            return;
+        }
+        bitmapRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        rectMatrix.setRectToRect(bitmapRect, dst, Matrix.ScaleToFit.FILL);
+        drawBitmap(canvas, bitmap, rectMatrix);
+    }
+
+    void drawBitmap(Canvas canvas, Bitmap bitmap, Matrix matrix) {
+        if (mode == Mode.STILL) {
+            canvas.drawBitmap(bitmap, matrix, stillPaint);
+            return;
+        }
+        int saveCount = canvas.save();
+        canvas.concat(matrix);
+        fill(canvas, bitmap);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * 在Bitmap自己的坐标系里用Shader填满它的范围
+     */
+    private void fill(Canvas canvas, Bitmap bitmap) {
+        BitmapShader shader = shaders.get(bitmap);
+        if (shader == null) {
+            if (shaders.size() >= MAX_SHADERS) {
+                shaders.clear();
+            }
+            shader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            shaders.put(bitmap, shader);
+        }
+        motionPaint.setShader(shader);
+        canvas.drawRect(0, 0, bitmap.getWidth(), bitmap.getHeight(), motionPaint);
+        motionPaint.setShader(null);
+    }
+
+    /**
+     * Bitmap还给缓存或者复用池之前调用，Shader不再持有它
+     */
+    void forget(Bitmap bitmap) {
+        shaders.remove(bitmap);
+    }
+
+    /**
+     * View移除的时候调用
+     */
+    void release() {
+        view.removeCallbacks(stillCheck);
+        shaders.clear();
+    }
+}
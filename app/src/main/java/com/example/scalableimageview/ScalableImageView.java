@@ -1,20 +1,24 @@
 package com.example.scalableimageview;
 
-import android.animation.ObjectAnimator;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.view.GestureDetector;
 import android.view.MotionEvent;
-import android.view.ScaleGestureDetector;
 import android.view.View;
-import android.widget.OverScroller;
+import android.view.ViewConfiguration;
 
 import androidx.annotation.Nullable;
-import androidx.core.view.GestureDetectorCompat;
+
+import java.io.InputStream;
+import java.util.concurrent.Callable;
 
 public class ScalableImageView extends View {
 
@@ -22,85 +26,480 @@ public class ScalableImageView extends View {
      * 把方法实现都提取出来
      */
     /**
-     * 手势监听
+     * 手势监听：单指拖动、惯性滑动、双击，双指以中心点为轴放缩
      */
-    GestureDetectorCompat gestureDetectorCompat;
-    GestureDetector.OnGestureListener fageGestureListener = new FageGestureListerner();
-    Runnable fageRunner = new FageRunner();
+    TouchInput touchInput;
+    GestureEngine.Listener fageGestureListener = new FageGestureListener();
+    int minFlingVelocity;
+    int maxFlingVelocity;
+
+    private static final float IMAGE_WIDTH = Utils.dpToPixel(300);
 
     /**
-     * 双指放缩功能
+     * 第0级的解码宽度，默认IMAGE_WIDTH，图库里按屏幕宽度解码
      */
-    ScaleGestureDetector scaleGestureDetector;
-    ScaleGestureDetector.OnScaleGestureListener fageScaleGestureListener = new FageScaleGestureListener();
-
-    private static final float IMAGE_WIDTH = Utils.dpToPixel(300);
+    int baseWidth = (int) IMAGE_WIDTH;
     /**
      * 放缩系数
      */
     private static final float OVER_SCALE_FACTOR = 1.5f;
 
-    private Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    /**
+     * 惯性滑动的回弹距离
+     */
+    private static final int OVER_SCROLL = (int) Utils.dpToPixel(50);
+
     Bitmap bitmap;
 
-    float originOffsetX;
-    float originOffsetY;
-    float offsetX;
-    float offsetY;
-    float smallScale;
-    float bigScale;
+    /**
+     * 图片来源，默认是示例头像
+     */
+    ImageSource source;
+
+    /**
+     * 解码的像素格式策略，默认自动选择
+     */
+    DecodeMode decodeMode = DecodeMode.AUTO;
+
+    /**
+     * 多级分辨率，按放缩系数选择合适大小的图来画
+     */
+    DetailLevels detailLevels;
+    private RectF bitmapRect = new RectF();
+
+    /**
+     * 异步解码，解码完成之前先画占位图
+     */
+    BitmapLoader.Task decodeTask;
+    private Paint placeholderPaint = new Paint();
 
-    // 滑动最大边界
-    float maxOffsetX;
-    float maxOffsetY;
+    /**
+     * 磁盘缓存里的缩略图，解码完成之前代替占位图画出来，只画不响应手势
+     */
+    Bitmap thumbnail;
+    BitmapLoader.Task thumbnailTask;
+
+    /**
+     * 分块模式，超大图只解码可见区域
+     */
+    TileRenderer tileRenderer;
+    private Rect visibleRect = new Rect();
+
+    /**
+     * 停下来之后按原图分辨率重新解码可见区域
+     */
+    RegionRefiner refiner = new RegionRefiner(this);
+
+    /**
+     * 放缩、偏移以及对应的Matrix
+     */
+    ViewTransform transform = new ViewTransform();
+
+    ViewMetrics metrics = new ViewMetrics();
+
+    /**
+     * 只重绘图片变换前后在View上的范围，图片比View大的时候就是整个View
+     */
+    DirtyRegion dirtyRegion = new DirtyRegion(this, metrics);
+    private RectF drawnBounds = new RectF();
+
+    /**
+     * 惯性滑动、双击放缩、旋转回正，按帧时间推进
+     */
+    TransformAnimator animator = new TransformAnimator(transform, new TransformAnimator.Listener() {
+        @Override
+        public void onAnimationFrame() {
+            invalidateImage();
+        }
 
-    // 惯性滑动
-    OverScroller overScroller;
+        /**
+         * 动画正常结束之后清晰化，被新的手势打断的时候不清晰化，等那个手势结束
+         */
+        @Override
+        public void onAnimationSettled() {
+            refiner.schedule();
+        }
+    });
 
     /**
      * 判断是放大还是缩小
      */
     boolean big = false;
 
+    /**
+     * 运动中用便宜的方式画图，停下来之后换成高质量
+     */
+    RenderQuality renderQuality = new RenderQuality(this, new RenderQuality.MotionState() {
+        @Override
+        public boolean isInMotion() {
+            return animator.isRunning() || touchInput.isDragging();
+        }
+    });
+
+    /**
+     * 图片解码出来之后要恢复的放缩状态
+     */
+    private ZoomState pendingZoomState;
+    private float[] viewportCenter = new float[2];
+
     public float getCurrentScale() {
-        return currentScale;
+        return transform.getScale();
     }
 
-    public void setCurrentScale(float scaleFraction) {
-        this.currentScale = scaleFraction;
+    public void setCurrentScale(float currentScale) {
+        transform.setAnimatedScale(currentScale);
+        invalidateImage();
+    }
+
+    /**
+     * 绘制耗时、触摸延迟和丢帧统计
+     */
+    public ViewMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 绘制质量策略，可以设置监听拿到每种模式下每帧的绘制耗时
+     */
+    public RenderQuality getRenderQuality() {
+        return renderQuality;
+    }
+
+    /**
+     * 设置放缩范围，以撑满View的放缩系数为单位
+     * @param minZoom 最小放缩，默认1，也就是图片刚好完整显示
+     * @param maxZoom 最大放缩，0表示双击放大倍数的两倍
+     */
+    public void setZoomLimits(float minZoom, float maxZoom) {
+        transform.setZoomLimits(minZoom, maxZoom);
+        updateDetailLevel();
         invalidate();
     }
 
     /**
-     * 动画 以及动画完成度
+     * 双指旋转，可以在松手之后转到最近的90度
+     * 手指转过的角度超过阈值之后才开始旋转，单纯捏撑的时候图片不会跟着歪
+     */
+    private static final float ROTATION_SLOP_DEGREES = 10;
+    private boolean rotationEnabled = true;
+    private boolean rotationSnap = true;
+
+    public float getImageRotation() {
+        return transform.getRotation();
+    }
+
+    /**
+     * 以View中心为轴旋转到某个角度，松手之后回正的动画也走这里
+     * @param degrees 顺时针旋转的角度
+     */
+    public void setImageRotation(float degrees) {
+        if (bitmap == null || transform.getImageWidth() == 0) {
+            return;
+        }
+        transform.rotateBy(degrees - transform.getRotation(), getWidth() / 2f, getHeight() / 2f);
+        invalidateImage();
+    }
+
+    public void setRotationEnabled(boolean enabled) {
+        rotationEnabled = enabled;
+    }
+
+    public boolean isRotationEnabled() {
+        return rotationEnabled;
+    }
+
+    /**
+     * 松手之后是否转到最近的90度
      */
-//    float scaleFraction;
-    float currentScale;
-    ObjectAnimator scaleObjectAnimator;
+    public void setRotationSnap(boolean snap) {
+        rotationSnap = snap;
+    }
+
+    public boolean isRotationSnap() {
+        return rotationSnap;
+    }
 
     public ScalableImageView(Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
 
-        bitmap = Utils.getAvatar(getResources(), (int) IMAGE_WIDTH);
+        placeholderPaint.setColor(Color.LTGRAY);
+        source = Utils.getAvatarSource(getResources());
+        detailLevels = new DetailLevels(this, renderQuality, source, baseWidth);
         /**
          * 初始化手势 并设置双击回调
          * 双指缩放等
          */
-        gestureDetectorCompat = new GestureDetectorCompat(context, fageGestureListener);
-        overScroller = new OverScroller(context);
-        scaleGestureDetector = new ScaleGestureDetector(context, fageScaleGestureListener);
+        touchInput = new TouchInput(TouchInput.newEngine(context, fageGestureListener));
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        minFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        maxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
     }
 
     /**
-     * 动画
-     * @return
+     * 显示另一张图片，放缩和偏移回到初始状态
+     * 同一个来源的图片在各个View之间共用缓存，原图尺寸也只探测一次
+     */
+    public void setImageSource(ImageSource source) {
+        clearImage();
+        this.source = source;
+        detailLevels = new DetailLevels(this, renderQuality, source, baseWidth);
+        loadBitmap();
+        invalidate();
+    }
+
+    public ImageSource getImageSource() {
+        return source;
+    }
+
+    /**
+     * 设置解码的像素格式策略，当前的图会按新的策略重新解码，放缩和偏移保持不变
+     * 实际用的像素格式可以从{@link #getMetrics()}读取
+     */
+    public void setDecodeMode(DecodeMode mode) {
+        if (decodeMode == mode) {
+            return;
+        }
+        decodeMode = mode;
+        // 分块模式的预览图和图块总是ARGB_8888
+        if (tileRenderer != null) {
+            return;
+        }
+        cancelDecode();
+        detailLevels.release();
+        releaseBitmap();
+        loadBitmap();
+        invalidate();
+    }
+
+    public DecodeMode getDecodeMode() {
+        return decodeMode;
+    }
+
+    /**
+     * 设置第0级的解码宽度，当前的图会重新解码，放缩和偏移保持不变
+     * 默认300dp，当作全屏图片查看器使用的时候可以设置成屏幕宽度
+     */
+    public void setDecodeWidth(int width) {
+        if (baseWidth == width) {
+            return;
+        }
+        baseWidth = width;
+        if (tileRenderer != null) {
+            return;
+        }
+        ZoomState state = new ZoomState();
+        saveZoomState(state);
+        cancelDecode();
+        detailLevels.release();
+        releaseBitmap();
+        detailLevels = new DetailLevels(this, renderQuality, source, baseWidth);
+        transform.clearSize();
+        pendingZoomState = state;
+        loadBitmap();
+        invalidate();
+    }
+
+    public int getDecodeWidth() {
+        return baseWidth;
+    }
+
+    /**
+     * 保存当前的放缩和平移，还有等待恢复的状态的话保存的是那个状态
+     */
+    public void saveZoomState(ZoomState out) {
+        if (pendingZoomState != null || transform.getImageWidth() == 0) {
+            out.set(pendingZoomState);
+            return;
+        }
+        transform.getViewportCenter(viewportCenter);
+        out.zoom = transform.getZoom();
+        out.rotation = transform.getRotation();
+        out.centerX = viewportCenter[0];
+        out.centerY = viewportCenter[1];
+    }
+
+    /**
+     * 恢复放缩和平移，图片还没解码出来的话等解码完成之后再恢复
+     * @param state null表示回到初始状态
      */
-    private ObjectAnimator getScaleAnimator() {
-        if (scaleObjectAnimator == null) {
-            scaleObjectAnimator = ObjectAnimator.ofFloat(this, "currentScale", 0);
+    public void setZoomState(ZoomState state) {
+        pendingZoomState = new ZoomState();
+        pendingZoomState.set(state);
+        if ((bitmap != null || thumbnail != null) && getWidth() > 0) {
+            animator.cancel();
+            computeScales();
+            invalidate();
         }
-        scaleObjectAnimator.setFloatValues(smallScale, bigScale);
-        return scaleObjectAnimator;
+    }
+
+    /**
+     * 切换到分块模式，适合地图、扫描件之类的超大图
+     * 原图只解码一张预览图，放大之后按可见区域解码图块
+     * 本地文件按路径解码，不需要把整个文件读进内存
+     */
+    public void setTiledImage(ImageSource source) {
+        clearImage();
+        this.source = source;
+        tileRenderer = new TileRenderer(this, source, baseWidth);
+        loadBitmap();
+        invalidate();
+    }
+
+    /**
+     * @param stream 图片数据流，创建解码器的时候读完并关闭
+     */
+    public void setTiledImage(InputStream stream) {
+        setTiledImage(ImageSource.fromStream(stream));
+    }
+
+    /**
+     * 释放当前图片相关的所有东西
+     */
+    private void clearImage() {
+        animator.cancel();
+        cancelDecode();
+        detailLevels.release();
+        releaseBitmap();
+        if (tileRenderer != null) {
+            tileRenderer.release();
+            tileRenderer = null;
+        }
+        releaseThumbnail();
+        transform.clearSize();
+        big = false;
+        pendingZoomState = null;
+    }
+
+    /**
+     * 在后台线程解码图片，解码完成之后再计算放缩系数
+     */
+    private void loadBitmap() {
+        if (bitmap != null || decodeTask != null || !isAttachedToWindow()) {
+            return;
+        }
+        BitmapLoader.Callback callback = new BitmapLoader.Callback() {
+            @Override
+            public void onLoaded(Bitmap result) {
+                decodeTask = null;
+                bitmap = result;
+                metrics.recordBitmap(result);
+                // 重新attach拿到的是同样尺寸的图，保留之前的放缩和偏移
+                // 之前画的是缩略图的话，按比例换算到这张图上，看到的范围不变
+                if (getWidth() > 0 && (pendingZoomState != null || bitmap.getWidth() != transform.getImageWidth()
+                        || bitmap.getHeight() != transform.getImageHeight())) {
+                    computeScales();
+                } else {
+                    updateDetailLevel();
+                }
+                releaseThumbnail();
+                saveThumbnail();
+                invalidate();
+            }
+        };
+        // 分块模式的预览图跟数据流绑定，不进共享缓存
+        if (tileRenderer != null) {
+            final TileRenderer renderer = tileRenderer;
+            decodeTask = BitmapLoader.load(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() throws Exception {
+                    return renderer.decodeBaseBitmap();
+                }
+            }, callback);
+        } else {
+            boolean readBack = Utils.needsReadBack(this);
+            detailLevels.setDecodeMode(decodeMode, readBack);
+            decodeTask = BitmapLoader.load(source, baseWidth, decodeMode, readBack, callback);
+            // 内存缓存没有命中，先从磁盘读缩略图画出来
+            if (decodeTask != null) {
+                loadThumbnail();
+            }
+        }
+    }
+
+    /**
+     * 后台读磁盘上的缩略图，比完整解码先回来的话先画它
+     */
+    private void loadThumbnail() {
+        if (thumbnail != null || thumbnailTask != null) {
+            return;
+        }
+        final String key = source.getKey();
+        final ThumbnailCache cache = ThumbnailCache.getInstance(getContext());
+        thumbnailTask = BitmapLoader.loadOptional(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return cache.get(key);
+            }
+        }, new BitmapLoader.Callback() {
+            @Override
+            public void onLoaded(Bitmap result) {
+                thumbnailTask = null;
+                if (bitmap != null) {
+                    return;
+                }
+                thumbnail = result;
+                if (getWidth() > 0) {
+                    computeScales();
+                }
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * 完整的图解码出来之后，磁盘上还没有缩略图的话在后台存一张
+     * 分块模式的数据流只能读一次，不存
+     */
+    private void saveThumbnail() {
+        if (tileRenderer != null) {
+            return;
+        }
+        final ImageSource target = source;
+        final ThumbnailCache cache = ThumbnailCache.getInstance(getContext());
+        BitmapLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                cache.put(target);
+            }
+        });
+    }
+
+    private void releaseThumbnail() {
+        if (thumbnailTask != null) {
+            thumbnailTask.cancel();
+            thumbnailTask = null;
+        }
+        if (thumbnail != null) {
+            renderQuality.forget(thumbnail);
+            thumbnail = null;
+        }
+    }
+
+    private void cancelDecode() {
+        if (decodeTask != null) {
+            decodeTask.cancel();
+            decodeTask = null;
+        }
+    }
+
+    /**
+     * 不再使用当前的Bitmap，交给缓存和复用池处理
+     */
+    private void releaseBitmap() {
+        if (bitmap == null) {
+            return;
+        }
+        renderQuality.forget(bitmap);
+        if (tileRenderer != null) {
+            // 分块模式的预览图只有自己在用，直接复用
+            BitmapPool.getInstance().put(bitmap);
+        } else {
+            BitmapCache.getInstance().release(bitmap);
+        }
+        bitmap = null;
+        // 清晰图是按这张图的坐标画的，一起丢掉
+        refiner.clear();
+        metrics.recordBitmap(null);
     }
 
     /**
@@ -113,38 +512,165 @@ public class ScalableImageView extends View {
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
-        originOffsetX = (getWidth() - bitmap.getWidth()) / 2f;
-        originOffsetY = (getHeight() - bitmap.getHeight()) / 2f;
+        if (bitmap != null || thumbnail != null) {
+            // 边界变了，正在进行的惯性滑动和放缩动画作废
+            animator.cancel();
+            computeScales();
+        }
+    }
 
-        /**
-         * 计算最大最小的Scale
-         * 如果是宽大于高的图片，那么最小的Scale就是View宽/Bitmap宽
-         * 如果是宽小于高的图片，那么最小的Scale就是View高/Bitmap高
-         * */
-        if ((float) bitmap.getWidth() / bitmap.getHeight() > (float) getWidth() / getHeight()) {
-            smallScale = (float) getWidth() / bitmap.getWidth();
-            bigScale = (float) getHeight() / bitmap.getHeight() * OVER_SCALE_FACTOR;
-        } else {
-            smallScale = (float) getHeight() / bitmap.getHeight();
-            bigScale = (float) getWidth() / bitmap.getWidth() * OVER_SCALE_FACTOR;
+    /**
+     * 按View尺寸和当前的图（解码出来之前是缩略图）计算放缩系数
+     * 之前已经按别的尺寸算过的话，保持View中心看到的内容、放缩和旋转不变
+     */
+    private void computeScales() {
+        if (pendingZoomState == null && transform.getImageWidth() != 0) {
+            pendingZoomState = new ZoomState();
+            saveZoomState(pendingZoomState);
+        }
+        Bitmap image = bitmap != null ? bitmap : thumbnail;
+        transform.setSize(getWidth(), getHeight(), image.getWidth(), image.getHeight(), OVER_SCALE_FACTOR);
+        bitmapRect.set(0, 0, image.getWidth(), image.getHeight());
+        if (pendingZoomState != null) {
+            transform.restore(pendingZoomState.zoom, pendingZoomState.rotation,
+                    pendingZoomState.centerX, pendingZoomState.centerY);
+            big = transform.getScale() > transform.getSmallScale();
+            pendingZoomState = null;
+        }
+        updateDetailLevel();
+    }
+
+    /**
+     * 放缩系数变了之后重新选择多级分辨率的级别，绘制的时候只读取选好的级别
+     */
+    private void updateDetailLevel() {
+        if (bitmap != null && tileRenderer == null) {
+            detailLevels.update(transform.getScale());
         }
-        currentScale = smallScale;
-        maxOffsetX = (bitmap.getWidth() * bigScale - getWidth()) / 2;
-        maxOffsetY = (bitmap.getHeight() * bigScale - getHeight()) / 2;
+    }
+
+    /**
+     * 放大之后还没滑到边的方向由自己处理，滑到边之后交给ViewPager之类的父View翻页
+     */
+    @Override
+    public boolean canScrollHorizontally(int direction) {
+        if (bitmap == null || !big) {
+            return false;
+        }
+        if (direction > 0) {
+            return transform.getOffsetX() > -transform.getMaxOffsetX();
+        }
+        return transform.getOffsetX() < transform.getMaxOffsetX();
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        metrics.beginDraw();
+        dirtyRegion.beginFrame();
+
+        // 还在解码，有缩略图的话先按恢复的放缩状态画缩略图
+        if (bitmap == null && thumbnail != null) {
+            int saveCount = canvas.save();
+            canvas.concat(transform.getMatrix());
+            renderQuality.beginFrame();
+            renderQuality.drawBitmap(canvas, thumbnail, 0, 0);
+            renderQuality.endFrame();
+            canvas.restoreToCount(saveCount);
+            dirtyRegion.drawOverlay(canvas);
+            metrics.endDraw();
+            return;
+        }
+        // 没有缩略图，画一个占位图
+        if (bitmap == null) {
+            float half = baseWidth / 2f;
+            canvas.drawRect(getWidth() / 2f - half, getHeight() / 2f - half,
+                    getWidth() / 2f + half, getHeight() / 2f + half, placeholderPaint);
+            dirtyRegion.drawOverlay(canvas);
+            metrics.endDraw();
+            return;
+        }
+        imageBounds(drawnBounds);
+        renderQuality.beginFrame();
+        int saveCount = canvas.save();
 
         // 放缩，使之撑满屏幕
         /**
-         * Scale变化过程，使用动画完成度进行计算，使之呈现绘制动画的顺滑变大的动画效果
+         * 变换矩阵只在手势改变状态之后重新计算，之后画布就是图片坐标系
          */
-        float scaleFraction = (currentScale - smallScale) / (bigScale - smallScale);
-        canvas.translate(offsetX * scaleFraction, offsetY * scaleFraction);
-        canvas.scale(currentScale, currentScale, getWidth() / 2f, getHeight() / 2f);
-        canvas.drawBitmap(bitmap, originOffsetX, originOffsetY, paint);
+        canvas.concat(transform.getMatrix());
+
+        if (tileRenderer == null) {
+            // 用放缩变化的时候选好的那一级，画到原图的位置上
+            Bitmap level = detailLevels.current(bitmap);
+            if (level == bitmap) {
+                renderQuality.drawBitmap(canvas, bitmap, 0, 0);
+            } else {
+                renderQuality.drawBitmap(canvas, level, bitmapRect);
+            }
+            refiner.draw(canvas);
+        } else {
+            // 分块模式下，在预览图上面叠加可见区域的清晰图块
+            renderQuality.drawBitmap(canvas, bitmap, 0, 0);
+            canvas.getClipBounds(visibleRect);
+            tileRenderer.draw(canvas, visibleRect, transform.getScale());
+        }
+        canvas.restoreToCount(saveCount);
+        renderQuality.endFrame();
+        dirtyRegion.drawOverlay(canvas);
+        metrics.endDraw();
+    }
+
+    /**
+     * 上一帧画图片的范围和变换之后的范围都要重绘
+     */
+    private void invalidateImage() {
+        // 图片动了，之前安排的清晰化作废
+        refiner.cancel();
+        if (bitmap == null) {
+            invalidate();
+            return;
+        }
+        updateDetailLevel();
+        dirtyRegion.add(drawnBounds);
+        imageBounds(drawnBounds);
+        dirtyRegion.add(drawnBounds);
+        dirtyRegion.invalidate();
+    }
+
+    /**
+     * 图片当前在View上的范围
+     */
+    private void imageBounds(RectF out) {
+        transform.getMatrix().mapRect(out, bitmapRect);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        metrics.attach(this);
+        loadBitmap();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        metrics.detach();
+        animator.cancel();
+        cancelDecode();
+        detailLevels.release();
+        releaseBitmap();
+        releaseThumbnail();
+        refiner.release();
+        renderQuality.release();
+        if (tileRenderer != null) {
+            // 重新attach的时候重新打开解码器，只能读一次的数据流没办法重新打开，只释放图块
+            if (source.isRepeatable()) {
+                tileRenderer.release();
+            } else {
+                tileRenderer.trimMemory();
+            }
+        }
     }
 
     /**
@@ -154,171 +680,214 @@ public class ScalableImageView extends View {
      */
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        boolean result = scaleGestureDetector.onTouchEvent(event);
-        /**
-         * 如果不是在捏撑，则双指点击
-         */
-        if (!scaleGestureDetector.isInProgress()) {
-            result = gestureDetectorCompat.onTouchEvent(event);
+        metrics.onEvent(event);
+        // 图片还没解码出来，没有可以操作的内容
+        if (bitmap == null) {
+            return false;
         }
-        return result;
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            // 手指按下，正在进行的动画立刻停下
+            animator.cancel();
+            refiner.cancel();
+        }
+        touchInput.onTouchEvent(event);
+        // 手指抬起并且没有接着惯性滑动或者放缩动画，图片已经停下来了
+        int action = event.getActionMasked();
+        if ((action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) && !animator.isRunning()) {
+            refiner.schedule();
+        }
+        return true;
     }
 
     /**
-     * 处理放大或者滑动之后的边界问题
-     * 也就是若方法或者滑动之后边界超出屏幕，则撑满屏幕即可
+     * 保存View状态，横竖屏切换、进程被杀之后恢复到同一个位置
+     * 图片来源由使用方重新设置，来源的key对不上的时候不恢复；View需要有id才会被保存
      */
-    private void fixOffset() {
-        /**
-         * 左右滑动，不能超过图片边界
-         */
-        offsetX = Math.max(offsetX, -maxOffsetX);
-        offsetX = Math.min(offsetX, maxOffsetX);
-        /**
-         * 上下滑动不能超过图片边界
-         */
-        offsetY = Math.max(offsetY, -maxOffsetY);
-        offsetY = Math.min(offsetY, maxOffsetY);
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.sourceKey = source.getKey();
+        saveZoomState(state.zoomState);
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState saved = (SavedState) state;
+        super.onRestoreInstanceState(saved.getSuperState());
+        if (source.getKey().equals(saved.sourceKey)) {
+            setZoomState(saved.zoomState);
+        }
     }
 
     /**
-     * 手势内部实现类
+     * 放缩状态，用来在图库翻页、View复用、横竖屏切换的时候保存和恢复
+     * 位置按图片的比例保存，View尺寸变了、解码尺寸变了都能对准同一块内容
      */
-    private class FageGestureListerner extends GestureDetector.SimpleOnGestureListener {
+    public static class ZoomState {
         /**
-         * Return true 使之响应点击回调
-         * @param e
-         * @return
+         * 图片完整显示的时候是1
          */
-        @Override
-        public boolean onDown(MotionEvent e) {
-            return true;
-        }
-
-        @Override
-        public void onShowPress(MotionEvent e) {
-
-        }
-
-        @Override
-        public boolean onSingleTapUp(MotionEvent e) {
-            return false;
-        }
+        public float zoom = 1;
+        /**
+         * 顺时针旋转的角度
+         */
+        public float rotation;
+        /**
+         * View中心对应的图片上的点，用图片宽高的比例表示，图片中心是(0.5, 0.5)
+         */
+        public float centerX = 0.5f;
+        public float centerY = 0.5f;
 
         /**
-         * 手指跟随滚动
-         * @param e1
-         * @param e2
-         * @param distanceX
-         * @param distanceY
-         * @return
+         * @param other null表示初始状态
          */
-        @Override
-        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-            if (big) {
-                offsetX -= distanceX;
-                offsetY -= distanceY;
-                fixOffset();
-                invalidate();
-            }
-            return false;
+        void set(ZoomState other) {
+            zoom = other == null ? 1 : other.zoom;
+            rotation = other == null ? 0 : other.rotation;
+            centerX = other == null ? 0.5f : other.centerX;
+            centerY = other == null ? 0.5f : other.centerY;
         }
+    }
 
-        @Override
-        public void onLongPress(MotionEvent e) {
+    static class SavedState extends BaseSavedState {
 
-        }
+        String sourceKey;
+        final ZoomState zoomState = new ZoomState();
 
-        /**
-         * 惯性滑动代码
-         * @param e1
-         * @param e2
-         * @param velocityX
-         * @param velocityY
-         * @return
-         */
-        @Override
-        public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
-            if (big) {
-                /**
-                 * 最后两个参数是回弹效果
-                 */
-                overScroller.fling((int)offsetX, (int)offsetY, (int)velocityX, (int)velocityY,
-                        -(int)maxOffsetX, (int)maxOffsetX, -(int)maxOffsetY, (int)maxOffsetY,
-                        (int)Utils.dpToPixel(50), (int)Utils.dpToPixel(50));
-                postOnAnimation(fageRunner);
-            }
-            return false;
+        SavedState(Parcelable superState) {
+            super(superState);
         }
 
-        @Override
-        public boolean onSingleTapConfirmed(MotionEvent e) {
-            return false;
+        private SavedState(Parcel in) {
+            super(in);
+            sourceKey = in.readString();
+            zoomState.zoom = in.readFloat();
+            zoomState.rotation = in.readFloat();
+            zoomState.centerX = in.readFloat();
+            zoomState.centerY = in.readFloat();
         }
 
         @Override
-        public boolean onDoubleTap(MotionEvent e) {
-            big = !big;
-            if (big) {
-                // 放大的时候，减去偏移量，以保证触摸放大的时候，触摸点不偏移
-                offsetX = (e.getX() - getWidth() / 2f) * (1 - bigScale / smallScale);
-                offsetY = (e.getY() - getHeight() / 2f) * (1 - bigScale / smallScale);
-                fixOffset();
-                getScaleAnimator().start();
-            } else {
-                getScaleAnimator().reverse();
-            }
-            Log.d("gesture", "double click");
-            return false;
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeString(sourceKey);
+            out.writeFloat(zoomState.zoom);
+            out.writeFloat(zoomState.rotation);
+            out.writeFloat(zoomState.centerX);
+            out.writeFloat(zoomState.centerY);
         }
 
-        @Override
-        public boolean onDoubleTapEvent(MotionEvent e) {
-            return false;
-        }
-    }
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
 
-    /**
-     * 动画Runnable
-     */
-    private class FageRunner implements Runnable {
-        @Override
-        public void run() {
-            if (overScroller.computeScrollOffset()) {
-                offsetX = overScroller.getCurrX();
-                offsetY = overScroller.getCurrY();
-                invalidate();
-                postOnAnimation(this);
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
             }
-        }
+        };
     }
 
     /**
-     * 放缩功能类
+     * 手势内部实现类
+     * 一根手指的时候放大了才能拖动，两根手指以中心点为轴放缩、旋转，同时跟着中心点平移
      */
-    private class FageScaleGestureListener implements ScaleGestureDetector.OnScaleGestureListener {
+    private class FageGestureListener extends GestureEngine.SimpleListener {
 
-        private float initialCurrentScale;
+        /**
+         * 这次手势里有过两根手指，抬起的时候重新判断放大状态
+         */
+        private boolean pinching;
+
+        /**
+         * 旋转开始之前累计的角度，超过阈值之后开始跟着手指转
+         */
+        private boolean rotating;
+        private float pendingRotation;
 
         @Override
-        public boolean onScale(ScaleGestureDetector detector) {
-            // 每次放缩开始 初始值乘以放缩比例
-            currentScale = initialCurrentScale * detector.getScaleFactor();
-            big = true;
-            invalidate();
-            return false;
+        public void onPointerDown(int pointerId, float x, float y, long time) {
+            int count = touchInput.getEngine().getPointerCount();
+            if (count == 1) {
+                pinching = false;
+            } else if (count == 2) {
+                pinching = true;
+                rotating = false;
+                pendingRotation = 0;
+                // 捏撑的过程中不让父View把事件拦走去翻页
+                if (getParent() != null) {
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                }
+            }
         }
 
+        /**
+         * 手指跟随滚动，双指的时候同时放缩和旋转
+         */
         @Override
-        public boolean onScaleBegin(ScaleGestureDetector detector) {
-            // 设置放缩初始值
-            initialCurrentScale = currentScale;
-            return true;
+        public void onTransform(float focusX, float focusY, float dx, float dy, float scale, float rotation) {
+            animator.clearResidualVelocity();
+            if (pinching) {
+                transform.zoomTo(transform.getScale() * scale, focusX, focusY);
+                if (rotationEnabled && !rotating) {
+                    pendingRotation += rotation;
+                    if (Math.abs(pendingRotation) > ROTATION_SLOP_DEGREES) {
+                        rotating = true;
+                        rotation = pendingRotation;
+                    }
+                }
+                if (rotating) {
+                    transform.rotateBy(rotation, focusX, focusY);
+                }
+                transform.offsetBy(dx, dy);
+                invalidateImage();
+            } else if (big) {
+                transform.offsetBy(dx, dy);
+                invalidateImage();
+            }
         }
 
+        /**
+         * 惯性滑动代码，双指松开的时候也带着中心点的速度滑出去，同时回正角度
+         */
         @Override
-        public void onScaleEnd(ScaleGestureDetector detector) {
+        public void onGestureEnd(boolean moved, float velocityX, float velocityY) {
+            if (pinching) {
+                big = transform.getScale() > transform.getSmallScale();
+                if (rotating && rotationSnap) {
+                    animator.rotateTo(ZoomMath.snapDegrees(transform.getRotation()));
+                }
+            }
+            if (!big || !moved || Math.hypot(velocityX, velocityY) < minFlingVelocity) {
+                return;
+            }
+            velocityX = ZoomMath.clamp(velocityX, -maxFlingVelocity, maxFlingVelocity);
+            velocityY = ZoomMath.clamp(velocityY, -maxFlingVelocity, maxFlingVelocity);
+            // 超出边界最多OVER_SCROLL，然后弹回来
+            animator.fling(velocityX, velocityY, OVER_SCROLL);
+        }
 
+        @Override
+        public void onDoubleTap(float x, float y) {
+            big = !big;
+            if (big) {
+                // 动画开始之前就去解码放大之后需要的级别
+                if (tileRenderer == null) {
+                    detailLevels.prefetch(transform.getBigScale());
+                }
+                // 以触摸点为中心放大，放大之后触摸点下面的内容不偏移
+                animator.zoomTo(transform.getBigScale(), x, y);
+            } else {
+                animator.zoomTo(transform.getSmallScale(), getWidth() / 2f, getHeight() / 2f);
+            }
+            Log.d("gesture", "double click");
         }
     }
 }
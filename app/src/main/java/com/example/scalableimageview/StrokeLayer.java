@@ -0,0 +1,78 @@
+package com.example.scalableimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+/**
+ * 笔迹的离屏图层
+ * 已经画完的笔迹段栅格化到一张跟View一样大的Bitmap上，每帧只需要贴一次图，再画最新的一小段
+ * 这样每帧的绘制耗时跟笔迹长度无关
+ *
+ * 图层的Bitmap从复用池里取，View移除时还回去，之后再用到的时候内容是空的，需要调用方重新画一遍
+ */
+class StrokeLayer {
+
+    private final Canvas canvas = new Canvas();
+    private Bitmap bitmap;
+
+    /**
+     * 保证图层和View一样大
+     * @return 图层是新分配的，内容是空的，调用方需要把已有的笔迹重新画上去
+     */
+    boolean ensureSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        if (bitmap != null && bitmap.getWidth() == width && bitmap.getHeight() == height) {
+            return false;
+        }
+        release();
+        bitmap = BitmapPool.getInstance().get(width, height, Bitmap.Config.ARGB_8888);
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            bitmap.eraseColor(Color.TRANSPARENT);
+        }
+        canvas.setBitmap(bitmap);
+        return true;
+    }
+
+    /**
+     * 把一段笔迹栅格化到图层上
+     */
+    void drawPath(Path path, Paint paint) {
+        if (bitmap != null) {
+            canvas.drawPath(path, paint);
+        }
+    }
+
+    /**
+     * 把图层贴到View上
+     */
+    void draw(Canvas target) {
+        if (bitmap != null) {
+            target.drawBitmap(bitmap, 0, 0, null);
+        }
+    }
+
+    void clear() {
+        if (bitmap != null) {
+            bitmap.eraseColor(Color.TRANSPARENT);
+        }
+    }
+
+    /**
+     * 还给复用池
+     */
+    void release() {
+        if (bitmap == null) {
+            return;
+        }
+        canvas.setBitmap(null);
+        BitmapPool.getInstance().put(bitmap);
+        bitmap = null;
+    }
+}
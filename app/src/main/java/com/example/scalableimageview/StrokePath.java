@@ -0,0 +1,9 @@
+package com.example.scalableimageview;
+
+import android.graphics.Path;
+
+/**
+ * 让{@link Stroke}直接输出到Path，moveTo、lineTo、quadTo都是Path本身的方法
+ */
+class StrokePath extends Path implements Stroke.PathSink {
+}
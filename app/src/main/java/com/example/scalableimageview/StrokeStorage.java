@@ -0,0 +1,259 @@
+package com.example.scalableimageview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 笔迹的保存和读取
+ * 录制的时候主线程只把事件编码进内存里的buffer，写满或者一笔结束的时候交给IO线程写文件
+ * 读取的时候IO线程一批一批地解码，每批回到主线程画出来，大文件不用等全部读完
+ * 文件格式见{@link StrokeFormat}
+ */
+public class StrokeStorage {
+
+    private static final String TAG = "StrokeStorage";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * 读取时每批回放的事件数
+     */
+    private static final int BATCH_SIZE = 512;
+
+    /**
+     * 文件读写按顺序在一个线程里执行，跟解码线程分开
+     */
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "stroke-io");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * 读取回调，在主线程执行
+     */
+    interface Callback {
+        void onEvents(StrokeEvents events);
+    }
+
+    /**
+     * 开始录制，文件在IO线程打开，已经存在的会被覆盖
+     */
+    static Recorder record(File file) {
+        return new Recorder(file);
+    }
+
+    /**
+     * 在IO线程读取，每读一批回到主线程回调一次
+     * @return 可以用来取消的任务
+     */
+    static Task load(final File file, Callback callback) {
+        final Task task = new Task(callback);
+        IO_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                FileInputStream input = null;
+                try {
+                    input = new FileInputStream(file);
+                    StrokeReader reader = new StrokeReader(input.getChannel(), BUFFER_SIZE);
+                    while (!task.cancelled) {
+                        StrokeEvents events = new StrokeEvents(BATCH_SIZE);
+                        if (reader.read(events, BATCH_SIZE) < 0) {
+                            break;
+                        }
+                        task.deliver(events);
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "load failed: " + file, e);
+                } finally {
+                    closeQuietly(input);
+                }
+            }
+        });
+        return task;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "close failed", e);
+        }
+    }
+
+    /**
+     * 一次读取任务
+     */
+    static class Task {
+
+        private final Callback callback;
+        private volatile boolean cancelled;
+
+        private Task(Callback callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * 取消读取，只能在主线程调用，已经读出来还没回调的批次会被丢掉
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        private void deliver(final StrokeEvents events) {
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled) {
+                        callback.onEvents(events);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 录制，所有方法都在主线程调用
+     * 编码只写内存，不会阻塞主线程；IO线程写完的buffer还回来重复使用
+     */
+    static class Recorder implements StrokeReader.Listener {
+
+        private final File file;
+        private final StrokeEncoder encoder = new StrokeEncoder();
+        private final ArrayBlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(2);
+        private boolean closed;
+
+        /**
+         * 只在IO线程访问
+         */
+        private FileChannel channel;
+        private boolean failed;
+
+        private Recorder(File file) {
+            this.file = file;
+            encoder.setBuffer(ByteBuffer.allocate(BUFFER_SIZE));
+            encoder.writeHeader();
+        }
+
+        @Override
+        public void onDown(int pointerId, long time, float x, float y) {
+            if (closed) {
+                return;
+            }
+            encoder.onDown(pointerId, time, x, y);
+            flushIfFull();
+        }
+
+        @Override
+        public void onMove(int pointerId, long time, float x, float y) {
+            if (closed) {
+                return;
+            }
+            encoder.onMove(pointerId, time, x, y);
+            flushIfFull();
+        }
+
+        /**
+         * 一笔结束的时候写一次文件，进程被杀也最多丢掉正在画的一笔
+         */
+        @Override
+        public void onUp(int pointerId, long time) {
+            if (closed) {
+                return;
+            }
+            encoder.onUp(pointerId, time);
+            flush();
+        }
+
+        /**
+         * 写完剩下的内容之后关闭文件
+         */
+        void close() {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            IO_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    closeQuietly(channel);
+                    channel = null;
+                }
+            });
+        }
+
+        private void flushIfFull() {
+            if (encoder.getBuffer().remaining() < StrokeFormat.MAX_RECORD_BYTES) {
+                flush();
+            }
+        }
+
+        /**
+         * 把写好的buffer交给IO线程，换一个空的继续编码
+         */
+        private void flush() {
+            final ByteBuffer full = encoder.getBuffer();
+            if (full.position() == 0) {
+                return;
+            }
+            ByteBuffer next = freeBuffers.poll();
+            // IO线程还没写完，不等它，直接分配一个新的
+            encoder.setBuffer(next != null ? next : ByteBuffer.allocate(BUFFER_SIZE));
+            full.flip();
+            IO_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    write(full);
+                    full.clear();
+                    freeBuffers.offer(full);
+                }
+            });
+        }
+
+        private void write(ByteBuffer buffer) {
+            if (failed) {
+                return;
+            }
+            try {
+                if (channel == null) {
+                    channel = new FileOutputStream(file).getChannel();
+                }
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                failed = true;
+                Log.w(TAG, "record failed: " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.scalableimageview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 磁盘上的缩略图缓存
+ * 图片第一次解码出来之后在后台存一张小图，之后横竖屏切换、进程被杀之后恢复，
+ * View可以先画这张小图，同时在后台按原来的尺寸解码
+ *
+ * 文件名是图片来源key的SHA-1，总大小超过上限之后删掉最久没读过的
+ * 读写都在解码线程，主线程不碰磁盘
+ */
+class ThumbnailCache {
+
+    private static final String TAG = "ThumbnailCache";
+
+    /**
+     * 缩略图的最小宽度，按2的幂采样，实际宽度在它和它的两倍之间
+     */
+    static final int THUMBNAIL_WIDTH = 256;
+
+    private static final long MAX_SIZE = 8 * 1024 * 1024;
+    private static final int JPEG_QUALITY = 85;
+
+    private static volatile ThumbnailCache instance;
+
+    private final File dir;
+
+    /**
+     * 已经确定在磁盘上的key，不用每次都查文件
+     */
+    private final Set<String> stored = new HashSet<>();
+
+    static ThumbnailCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ThumbnailCache.class) {
+                if (instance == null) {
+                    instance = new ThumbnailCache(new File(context.getApplicationContext().getCacheDir(), "thumbnails"));
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ThumbnailCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 读缩略图，读到之后更新文件时间，淘汰的时候排在后面
+     * @return 没有存过或者文件损坏的时候返回null
+     */
+    @WorkerThread
+    Bitmap get(String key) {
+        File file = file(key);
+        if (!file.exists()) {
+            return null;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap == null) {
+            file.delete();
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        synchronized (this) {
+            stored.add(key);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 还没有缩略图的话从图片来源解码一张存起来
+     * 单独按小尺寸采样解码，不读View正在画的Bitmap，硬件Bitmap也没关系
+     */
+    @WorkerThread
+    void put(ImageSource source) {
+        String key = source.getKey();
+        synchronized (this) {
+            if (stored.contains(key)) {
+                return;
+            }
+        }
+        File file = file(key);
+        if (!file.exists()) {
+            try {
+                write(source, file);
+            } catch (IOException e) {
+                Log.w(TAG, "write thumbnail failed", e);
+                return;
+            }
+            trimToSize();
+        }
+        synchronized (this) {
+            stored.add(key);
+        }
+    }
+
+    private void write(ImageSource source, File file) throws IOException {
+        source.probe();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        int sampleSize = 1;
+        while (source.getWidth() / (sampleSize * 2) >= THUMBNAIL_WIDTH) {
+            sampleSize *= 2;
+        }
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = source.decode(options);
+        if (bitmap == null) {
+            throw new IOException("unsupported image: " + source.getKey());
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            bitmap.recycle();
+            throw new IOException("cannot create " + dir);
+        }
+        // 先写临时文件再改名，写到一半被杀掉也不会留下坏文件
+        File temp = new File(dir, file.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            if (source.isOpaque() || !bitmap.hasAlpha()) {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            } else {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("cannot rename " + temp);
+        }
+    }
+
+    /**
+     * 总大小超过上限之后按最后读写的时间删掉旧的
+     */
+    private synchronized void trimToSize() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= MAX_SIZE) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (size <= MAX_SIZE) {
+                break;
+            }
+            size -= file.length();
+            file.delete();
+        }
+        // 不知道删掉的是哪些key，下次存的时候重新查文件
+        stored.clear();
+    }
+
+    private File file(String key) {
+        return new File(dir, sha1(key));
+    }
+
+    private static String sha1(String key) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.scalableimageview;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.view.View;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 分块解码渲染
+ * 把原图按采样率分成金字塔，每一层切成固定大小的图块
+ * 绘制的时候只解码当前可见区域覆盖到的图块，内存占用只跟屏幕大小有关，跟原图大小无关
+ */
+class TileRenderer {
+
+    /**
+     * 每个图块解码之后的边长
+     */
+    private static final int TILE_SIZE = 256;
+
+    private final View view;
+    private final ImageSource source;
+    private final int baseWidth;
+    private BitmapRegionDecoder decoder;
+
+    /**
+     * 每次解码预览图加一，回收解码器的任务只在期间没有重新解码预览图的时候才回收
+     * 只在持有锁的时候修改，主线程读的时候不用等正在解码的图块
+     */
+    private volatile int generation;
+    private int imageWidth;
+    private int imageHeight;
+
+    /**
+     * 预览图坐标 → 原图坐标 的比例
+     * 预览图是整张图按采样率缩小之后的结果，用来确定View的坐标系
+     */
+    private float baseToImage;
+
+    private final LruCache<Long, Bitmap> tiles;
+    private final Set<Long> pending = new HashSet<>();
+
+    /**
+     * 最近一次绘制所需要的图块范围，后台线程据此丢弃已经滑出屏幕的解码请求
+     */
+    private volatile int wantedLevel;
+    private volatile int wantedLeft;
+    private volatile int wantedTop;
+    private volatile int wantedRight;
+    private volatile int wantedBottom;
+
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect imageRect = new Rect();
+    private final RectF dstRect = new RectF();
+
+    TileRenderer(View view, ImageSource source, int baseWidth) {
+        this.view = view;
+        this.source = source;
+        this.baseWidth = baseWidth;
+
+        // 缓存容量按屏幕能铺下的图块数计算，留出两屏的余量给滑动和层级切换
+        DisplayMetrics metrics = Resources.getSystem().getDisplayMetrics();
+        int columns = metrics.widthPixels / TILE_SIZE + 2;
+        int rows = metrics.heightPixels / TILE_SIZE + 2;
+        tiles = new LruCache<Long, Bitmap>(columns * rows * 2 * TILE_SIZE * TILE_SIZE * 4) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue, Bitmap newValue) {
+                // 被淘汰的图块是最久没有画过的，已经不在屏幕上了，可以给下一个图块复用
+                BitmapPool.getInstance().put(oldValue);
+            }
+        };
+    }
+
+    /**
+     * 打开解码器并解码预览图，比较耗时，需要在后台线程调用
+     * 解码器被{@link #release()}回收之后再调用会重新打开
+     * @return 预览图，View的坐标系以它为准
+     * @throws IOException
+     */
+    @WorkerThread
+    synchronized Bitmap decodeBaseBitmap() throws IOException {
+        generation++;
+        if (decoder == null) {
+            decoder = source.newRegionDecoder();
+            imageWidth = decoder.getWidth();
+            imageHeight = decoder.getHeight();
+        }
+
+        // 预览图的采样率：保证宽度不小于baseWidth的最大2的幂
+        int sampleSize = 1;
+        while (imageWidth / (sampleSize * 2) >= baseWidth) {
+            sampleSize *= 2;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap baseBitmap = decoder.decodeRegion(new Rect(0, 0, imageWidth, imageHeight), options);
+        baseToImage = (float) imageWidth / baseBitmap.getWidth();
+        return baseBitmap;
+    }
+
+    /**
+     * 绘制可见区域的图块
+     * @param canvas 已经变换到预览图坐标系的画布
+     * @param visible 预览图坐标系下的可见区域
+     * @param scale 预览图当前的放缩系数
+     */
+    void draw(Canvas canvas, Rect visible, float scale) {
+        // 每个屏幕像素对应多少原图像素，取不超过它的最大2的幂作为采样率
+        float imagePixelsPerScreenPixel = baseToImage / scale;
+        int level = 0;
+        while ((1 << (level + 1)) <= imagePixelsPerScreenPixel) {
+            level++;
+        }
+        int sampleSize = 1 << level;
+        // 预览图本身已经够清晰了，不需要图块
+        if (sampleSize >= baseToImage) {
+            return;
+        }
+
+        int tileImageSize = TILE_SIZE * sampleSize;
+        int left = Math.max(0, (int) (visible.left * baseToImage) / tileImageSize);
+        int top = Math.max(0, (int) (visible.top * baseToImage) / tileImageSize);
+        int right = Math.min((imageWidth - 1) / tileImageSize, (int) (visible.right * baseToImage) / tileImageSize);
+        int bottom = Math.min((imageHeight - 1) / tileImageSize, (int) (visible.bottom * baseToImage) / tileImageSize);
+        wantedLevel = level;
+        wantedLeft = left;
+        wantedTop = top;
+        wantedRight = right;
+        wantedBottom = bottom;
+
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                long key = key(level, column, row);
+                Bitmap tile = tiles.get(key);
+                if (tile == null) {
+                    requestTile(key, level, column, row);
+                    continue;
+                }
+                tileRect(level, column, row, imageRect);
+                dstRect.set(imageRect.left / baseToImage, imageRect.top / baseToImage,
+                        imageRect.right / baseToImage, imageRect.bottom / baseToImage);
+                canvas.drawBitmap(tile, null, dstRect, paint);
+            }
+        }
+    }
+
+    /**
+     * View不可见的时候释放所有图块
+     */
+    void trimMemory() {
+        tiles.evictAll();
+    }
+
+    /**
+     * 不再显示这张图的时候调用，释放图块，并在解码线程回收解码器
+     * 解码器持有整个压缩文件的数据，不回收的话要等到finalize才释放
+     * 已经开始的图块解码跑完之后才回收，之后还没开始的图块直接放弃
+     * 解码线程有两个，回收之前又重新显示的话，预览图的解码可能先跑，这时候不回收，接着用原来的解码器
+     */
+    void release() {
+        trimMemory();
+        final int released = generation;
+        BitmapLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                releaseDecoder(released);
+            }
+        });
+    }
+
+    @WorkerThread
+    private synchronized void releaseDecoder(int released) {
+        if (generation == released && decoder != null) {
+            decoder.recycle();
+            decoder = null;
+        }
+    }
+
+    private void requestTile(final long key, final int level, final int column, final int row) {
+        synchronized (pending) {
+            if (!pending.add(key)) {
+                return;
+            }
+        }
+        // 图块跟整图共用解码线程池，解码的时候持有这个对象的锁，同一张图的多个图块实际上依次解码
+        BitmapLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!isWanted(level, column, row)) {
+                        return;
+                    }
+                    Rect rect = new Rect();
+                    tileRect(level, column, row, rect);
+                    BitmapFactory.Options options = new BitmapFactory.Options();
+                    options.inSampleSize = 1 << level;
+                    options.inMutable = true;
+                    options.inBitmap = BitmapPool.getInstance().get(
+                            divideCeil(rect.width(), options.inSampleSize),
+                            divideCeil(rect.height(), options.inSampleSize),
+                            Bitmap.Config.ARGB_8888);
+                    long start = System.nanoTime();
+                    Bitmap tile = decodeTile(rect, options);
+                    if (tile != null) {
+                        BitmapLoader.getMetrics().recordDecode(System.nanoTime() - start);
+                        tiles.put(key, tile);
+                        view.postInvalidateOnAnimation();
+                    }
+                } finally {
+                    synchronized (pending) {
+                        pending.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 跟回收解码器互斥，解码器已经回收的话返回null
+     */
+    @WorkerThread
+    private synchronized Bitmap decodeTile(Rect rect, BitmapFactory.Options options) {
+        if (decoder == null) {
+            BitmapPool.getInstance().put(options.inBitmap);
+            return null;
+        }
+        try {
+            return decoder.decodeRegion(rect, options);
+        } catch (IllegalArgumentException e) {
+            // 复用的Bitmap尺寸不合适，放回去重新分配
+            BitmapPool.getInstance().put(options.inBitmap);
+            options.inBitmap = null;
+            return decoder.decodeRegion(rect, options);
+        }
+    }
+
+    private boolean isWanted(int level, int column, int row) {
+        return level == wantedLevel
+                && column >= wantedLeft && column <= wantedRight
+                && row >= wantedTop && row <= wantedBottom;
+    }
+
+    /**
+     * 图块在原图中的区域
+     */
+    private void tileRect(int level, int column, int row, Rect out) {
+        int tileImageSize = TILE_SIZE << level;
+        out.set(column * tileImageSize, row * tileImageSize,
+                Math.min((column + 1) * tileImageSize, imageWidth),
+                Math.min((row + 1) * tileImageSize, imageHeight));
+    }
+
+    private static int divideCeil(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static long key(int level, int column, int row) {
+        return ((long) level << 58) | ((long) column << 29) | row;
+    }
+}
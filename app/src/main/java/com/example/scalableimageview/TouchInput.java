@@ -0,0 +1,70 @@
+package com.example.scalableimageview;
+
+import android.content.Context;
+import android.view.MotionEvent;
+import android.view.ViewConfiguration;
+
+/**
+ * 把MotionEvent交给{@link GestureEngine}
+ * MOVE事件里合并的历史采样按时间顺序逐个交过去，坐标复制到复用的数组里，不分配对象
+ */
+class TouchInput {
+
+    private final GestureEngine engine;
+    private int[] ids = new int[10];
+    private float[] xs = new float[10];
+    private float[] ys = new float[10];
+
+    TouchInput(GestureEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * 创建一个按系统触摸阈值和双击范围配置好的引擎，用于图片拖动和放缩
+     */
+    static GestureEngine newEngine(Context context, GestureEngine.Listener listener) {
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        GestureEngine engine = new GestureEngine(listener);
+        engine.setTouchSlop(configuration.getScaledTouchSlop());
+        engine.setDoubleTapSlop(configuration.getScaledDoubleTapSlop());
+        return engine;
+    }
+
+    GestureEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * 手指按着并且已经移动超过了触摸阈值
+     */
+    boolean isDragging() {
+        return engine.getPointerCount() > 0 && engine.isMoved();
+    }
+
+    void onTouchEvent(MotionEvent event) {
+        int count = event.getPointerCount();
+        if (ids.length < count) {
+            ids = new int[count];
+            xs = new float[count];
+            ys = new float[count];
+        }
+        for (int i = 0; i < count; i++) {
+            ids[i] = event.getPointerId(i);
+        }
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_MOVE) {
+            for (int h = 0; h < event.getHistorySize(); h++) {
+                for (int i = 0; i < count; i++) {
+                    xs[i] = event.getHistoricalX(i, h);
+                    ys[i] = event.getHistoricalY(i, h);
+                }
+                engine.onEvent(action, 0, count, ids, xs, ys, event.getHistoricalEventTime(h));
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            xs[i] = event.getX(i);
+            ys[i] = event.getY(i);
+        }
+        engine.onEvent(action, event.getActionIndex(), count, ids, xs, ys, event.getEventTime());
+    }
+}
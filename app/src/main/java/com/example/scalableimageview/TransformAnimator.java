@@ -0,0 +1,213 @@
+package com.example.scalableimageview;
+
+import android.view.Choreographer;
+
+/**
+ * 图片的所有动画：惯性滑动、双击放缩、松手之后的回正
+ * - 跟着Choreographer的帧时间推进，同一帧里几种动画一起算，只通知一次重绘
+ * - 偏移全部用float，不丢掉不足一个像素的移动
+ * - 按下的时候立刻停下，回调从Choreographer移除，不会有过期的帧再改状态
+ * - 惯性滑动的时候开始放缩，剩下的速度继续带着图片走，放缩结束之后接着滑，不会突然停住
+ */
+class TransformAnimator implements Choreographer.FrameCallback {
+
+    interface Listener {
+        /**
+         * 这一帧变换改变了
+         */
+        void onAnimationFrame();
+
+        /**
+         * 所有动画都正常结束，被cancel打断的不回调
+         */
+        void onAnimationSettled();
+    }
+
+    private static final long ZOOM_DURATION_NANOS = 300_000_000L;
+    private static final long ROTATION_DURATION_NANOS = 250_000_000L;
+
+    private final ViewTransform transform;
+    private final Listener listener;
+
+    private boolean running;
+    private long lastFrameNanos;
+
+    private boolean zooming;
+    private long zoomStartNanos;
+
+    private boolean rotating;
+    private long rotationStartNanos;
+    private float rotationFrom;
+    private float rotationTo;
+    private float rotationCurrent;
+
+    private final Fling flingX = new Fling();
+    private final Fling flingY = new Fling();
+    private float overscroll;
+
+    /**
+     * 放缩过程中惯性带来的额外偏移，放缩每帧重新插值偏移之后再加上
+     */
+    private float momentumX;
+    private float momentumY;
+
+    /**
+     * 被按下打断的时候还剩的速度，紧接着的双击放缩可以接过去
+     */
+    private float residualVelocityX;
+    private float residualVelocityY;
+    private long residualNanos;
+
+    TransformAnimator(ViewTransform transform, Listener listener) {
+        this.transform = transform;
+        this.listener = listener;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @param velocityX 像素/秒
+     * @param velocityY 像素/秒
+     * @param overscroll 最多能超出边界多少，超出之后弹回来
+     */
+    void fling(float velocityX, float velocityY, float overscroll) {
+        flingX.start(velocityX);
+        flingY.start(velocityY);
+        this.overscroll = overscroll;
+        start();
+    }
+
+    /**
+     * 以某个点为中心放缩到scale
+     * 还在惯性滑动的话继续滑；刚被按下打断的惯性在双击超时之内也会接过来
+     */
+    void zoomTo(float scale, float focusX, float focusY) {
+        transform.startZoomAnimation(scale, focusX, focusY);
+        zooming = true;
+        zoomStartNanos = System.nanoTime();
+        // 放缩会重新插值偏移，旋转回正不再继续
+        rotating = false;
+        momentumX = 0;
+        momentumY = 0;
+        if (flingX.isFinished() && flingY.isFinished() && residualNanos != 0) {
+            float seconds = (zoomStartNanos - residualNanos) / 1e9f;
+            flingX.start(Fling.decay(residualVelocityX, seconds));
+            flingY.start(Fling.decay(residualVelocityY, seconds));
+        }
+        clearResidualVelocity();
+        start();
+    }
+
+    /**
+     * 以View中心为轴转到某个角度
+     */
+    void rotateTo(float degrees) {
+        rotating = true;
+        rotationStartNanos = System.nanoTime();
+        rotationFrom = transform.getRotation();
+        rotationTo = degrees;
+        rotationCurrent = rotationFrom;
+        start();
+    }
+
+    /**
+     * 立刻停下所有动画，惯性滑动剩下的速度记下来
+     */
+    void cancel() {
+        if (!running) {
+            return;
+        }
+        if (!flingX.isFinished() || !flingY.isFinished()) {
+            residualVelocityX = flingX.getVelocity();
+            residualVelocityY = flingY.getVelocity();
+            residualNanos = System.nanoTime();
+        }
+        stop();
+    }
+
+    /**
+     * 手指拖动过了，之前的惯性不再交给放缩
+     */
+    void clearResidualVelocity() {
+        residualVelocityX = 0;
+        residualVelocityY = 0;
+        residualNanos = 0;
+    }
+
+    private void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        lastFrameNanos = System.nanoTime();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void stop() {
+        running = false;
+        zooming = false;
+        rotating = false;
+        flingX.stop();
+        flingY.stop();
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        // 帧时间是垂直同步的时间，可能比开始动画的时间还早一点
+        float seconds = Math.max(0, frameTimeNanos - lastFrameNanos) / 1e9f;
+        lastFrameNanos = Math.max(lastFrameNanos, frameTimeNanos);
+
+        if (rotating) {
+            float fraction = fraction(frameTimeNanos - rotationStartNanos, ROTATION_DURATION_NANOS);
+            float rotation = ZoomMath.lerp(rotationFrom, rotationTo, ease(fraction));
+            transform.rotateBy(rotation - rotationCurrent,
+                    transform.getViewWidth() / 2f, transform.getViewHeight() / 2f);
+            rotationCurrent = rotation;
+            rotating = fraction < 1;
+        }
+        boolean flinging = !flingX.isFinished() || !flingY.isFinished();
+        if (zooming) {
+            float fraction = fraction(frameTimeNanos - zoomStartNanos, ZOOM_DURATION_NANOS);
+            transform.setAnimatedScale(ZoomMath.lerp(transform.getAnimationStartScale(),
+                    transform.getAnimationEndScale(), ease(fraction)));
+            if (flinging) {
+                // 放缩过程中惯性只衰减，边界一直在变，最后统一限制在当前边界内
+                momentumX = flingX.step(momentumX, seconds, -Float.MAX_VALUE, Float.MAX_VALUE, 0);
+                momentumY = flingY.step(momentumY, seconds, -Float.MAX_VALUE, Float.MAX_VALUE, 0);
+            }
+            transform.offsetBy(momentumX, momentumY);
+            zooming = fraction < 1;
+        } else if (flinging) {
+            float maxOffsetX = transform.getMaxOffsetX();
+            float maxOffsetY = transform.getMaxOffsetY();
+            transform.setOffset(
+                    flingX.step(transform.getOffsetX(), seconds, -maxOffsetX, maxOffsetX, overscroll),
+                    flingY.step(transform.getOffsetY(), seconds, -maxOffsetY, maxOffsetY, overscroll));
+        }
+        listener.onAnimationFrame();
+
+        if (rotating || zooming || !flingX.isFinished() || !flingY.isFinished()) {
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            running = false;
+            listener.onAnimationSettled();
+        }
+    }
+
+    private static float fraction(long elapsedNanos, long durationNanos) {
+        return ZoomMath.clamp((float) elapsedNanos / durationNanos, 0, 1);
+    }
+
+    /**
+     * 先加速后减速，和ObjectAnimator默认的插值器一样
+     */
+    private static float ease(float fraction) {
+        return (float) (Math.cos((fraction + 1) * Math.PI) / 2 + 0.5);
+    }
+}
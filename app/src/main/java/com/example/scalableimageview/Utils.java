@@ -2,8 +2,10 @@ package com.example.scalableimageview;
 
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.util.TypedValue;
+import android.view.View;
+
+import java.io.IOException;
 
 public class Utils {
     public static float dpToPixel(float dp) {
@@ -11,13 +13,31 @@ public class Utils {
                 Resources.getSystem().getDisplayMetrics());
     }
 
+    private static ImageSource avatarSource;
+
+    /**
+     * 示例头像，进程内共用一个，原图尺寸只探测一次
+     */
+    static synchronized ImageSource getAvatarSource(Resources res) {
+        if (avatarSource == null) {
+            avatarSource = ImageSource.fromResource(res, R.drawable.avatar_rengwuxian);
+        }
+        return avatarSource;
+    }
+
+    /**
+     * 软件绘制的时候画不了HARDWARE的Bitmap，没有硬件加速或者用了软件层都算
+     */
+    static boolean needsReadBack(View view) {
+        return !view.isHardwareAccelerated() || view.getLayerType() == View.LAYER_TYPE_SOFTWARE;
+    }
+
     public static Bitmap getAvatar(Resources res, int width) {
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeResource(res, R.drawable.avatar_rengwuxian, options);
-        options.inJustDecodeBounds = false;
-        options.inDensity = options.outWidth;
-        options.inTargetDensity = width;
-        return BitmapFactory.decodeResource(res, R.drawable.avatar_rengwuxian, options);
+        try {
+            // 调用方拿到Bitmap之后可能读取像素，不用HARDWARE
+            return getAvatarSource(res).load(width, DecodeMode.AUTO, true);
+        } catch (IOException e) {
+            return null;
+        }
     }
 }
@@ -0,0 +1,270 @@
+package com.example.scalableimageview;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * 自定义View的性能统计
+ * - 每次onDraw的耗时
+ * - 从触摸事件产生到下一次onDraw完成的延迟
+ * - 动画和手势过程中的丢帧数，通过Choreographer逐帧回调统计
+ * - 每帧重绘的像素数，见{@link DirtyRegion}
+ * - 当前显示的Bitmap的像素格式和占用字节数，见{@link DecodeMode}
+ *
+ * 只在View有绘制的时候才监听Choreographer，静止一段时间之后自动停止，不会空转
+ */
+public class ViewMetrics implements Choreographer.FrameCallback {
+
+    /**
+     * 连续这么多帧没有绘制，认为View已经静止，停止监听
+     */
+    private static final int IDLE_FRAMES_TO_STOP = 10;
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private final Histogram drawHistogram = new Histogram();
+    private final Histogram latencyHistogram = new Histogram();
+    private final Histogram frameHistogram = new Histogram();
+
+    private boolean enabled = true;
+    private long frameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+
+    private long drawStartNanos;
+
+    /**
+     * 最早一个还没有被绘制出来的触摸事件时间，uptimeMillis
+     */
+    private long pendingEventTime;
+
+    private boolean monitoring;
+    private long lastFrameTimeNanos;
+    private int drawsSinceLastFrame;
+    private int idleFrames;
+
+    private long frameCount;
+    private long droppedFrames;
+
+    private long dirtyFrames;
+    private long totalDirtyPixels;
+    private long lastDirtyPixels;
+
+    private Bitmap.Config bitmapConfig;
+    private long bitmapBytes;
+
+    /**
+     * View attach之后根据屏幕刷新率计算一帧的时长
+     */
+    void attach(View view) {
+        Display display = view.getDisplay();
+        if (display != null && display.getRefreshRate() > 0) {
+            frameIntervalNanos = (long) (1000000000L / display.getRefreshRate());
+        }
+    }
+
+    void detach() {
+        stopMonitoring();
+    }
+
+    /**
+     * 在onTouchEvent开头调用
+     */
+    void onEvent(MotionEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (pendingEventTime == 0) {
+            pendingEventTime = event.getEventTime();
+        }
+        startMonitoring();
+    }
+
+    /**
+     * 在onDraw开头调用
+     */
+    void beginDraw() {
+        if (!enabled) {
+            return;
+        }
+        drawStartNanos = System.nanoTime();
+    }
+
+    /**
+     * 在onDraw结尾调用
+     */
+    void endDraw() {
+        if (!enabled || drawStartNanos == 0) {
+            return;
+        }
+        drawHistogram.record((System.nanoTime() - drawStartNanos) / 1000);
+        drawStartNanos = 0;
+        if (pendingEventTime != 0) {
+            latencyHistogram.record((SystemClock.uptimeMillis() - pendingEventTime) * 1000);
+            pendingEventTime = 0;
+        }
+        drawsSinceLastFrame++;
+        startMonitoring();
+    }
+
+    /**
+     * 记录这一帧重绘的像素数
+     */
+    void recordDirtyPixels(long pixels) {
+        if (!enabled) {
+            return;
+        }
+        dirtyFrames++;
+        totalDirtyPixels += pixels;
+        lastDirtyPixels = pixels;
+    }
+
+    /**
+     * 记录View当前显示的Bitmap，不参与重置，一直反映当前状态
+     */
+    void recordBitmap(Bitmap bitmap) {
+        bitmapConfig = bitmap == null ? null : bitmap.getConfig();
+        bitmapBytes = bitmap == null ? 0 : bitmap.getAllocationByteCount();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!monitoring) {
+            return;
+        }
+        // 只统计View有绘制的那些帧，静止的时候帧间隔再长也不算丢帧
+        if (lastFrameTimeNanos != 0 && drawsSinceLastFrame > 0) {
+            long interval = frameTimeNanos - lastFrameTimeNanos;
+            frameHistogram.record(interval / 1000);
+            frameCount++;
+            long frames = Math.round((double) interval / frameIntervalNanos);
+            if (frames > 1) {
+                droppedFrames += frames - 1;
+            }
+        }
+        idleFrames = drawsSinceLastFrame > 0 ? 0 : idleFrames + 1;
+        drawsSinceLastFrame = 0;
+        lastFrameTimeNanos = frameTimeNanos;
+        if (idleFrames >= IDLE_FRAMES_TO_STOP) {
+            stopMonitoring();
+        } else {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void startMonitoring() {
+        if (monitoring) {
+            return;
+        }
+        monitoring = true;
+        idleFrames = 0;
+        lastFrameTimeNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void stopMonitoring() {
+        if (!monitoring) {
+            return;
+        }
+        monitoring = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /**
+     * 关闭之后不再记录，也不再监听Choreographer
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            stopMonitoring();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * onDraw耗时
+     */
+    public Histogram getDrawHistogram() {
+        return drawHistogram;
+    }
+
+    /**
+     * 触摸事件到绘制完成的延迟
+     */
+    public Histogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * 有绘制的帧之间的间隔
+     */
+    public Histogram getFrameHistogram() {
+        return frameHistogram;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * 最近一帧重绘的像素数
+     */
+    public long getLastDirtyPixels() {
+        return lastDirtyPixels;
+    }
+
+    public long getTotalDirtyPixels() {
+        return totalDirtyPixels;
+    }
+
+    /**
+     * 平均每帧重绘的像素数
+     */
+    public long getAverageDirtyPixels() {
+        return dirtyFrames == 0 ? 0 : totalDirtyPixels / dirtyFrames;
+    }
+
+    /**
+     * 当前显示的Bitmap的像素格式，还没有图的时候是null
+     */
+    public Bitmap.Config getBitmapConfig() {
+        return bitmapConfig;
+    }
+
+    /**
+     * 当前显示的Bitmap占用的字节数，HARDWARE的在显存里
+     */
+    public long getBitmapBytes() {
+        return bitmapBytes;
+    }
+
+    public void reset() {
+        drawHistogram.reset();
+        latencyHistogram.reset();
+        frameHistogram.reset();
+        frameCount = 0;
+        droppedFrames = 0;
+        dirtyFrames = 0;
+        totalDirtyPixels = 0;
+        lastDirtyPixels = 0;
+        pendingEventTime = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "draw{" + drawHistogram + "}"
+                + " latency{" + latencyHistogram + "}"
+                + " frames=" + frameCount + " dropped=" + droppedFrames
+                + " dirtyPx=" + getAverageDirtyPixels()
+                + " config=" + bitmapConfig + " bitmapBytes=" + bitmapBytes;
+    }
+}
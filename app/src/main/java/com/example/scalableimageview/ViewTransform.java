@@ -0,0 +1,348 @@
+package com.example.scalableimageview;
+
+import android.graphics.Matrix;
+
+/**
+ * 图片的变换状态
+ * 把 初始偏移、放缩系数、滑动偏移 集中到一起，用一个预先分配好的Matrix表示
+ * 只有手势改变状态的时候才标记为脏，绘制的时候才重新计算，绘制和手势回调里不分配对象
+ *
+ * 图片先居中，再以View中心为轴旋转、放缩，最后平移，旋转和放缩、平移合在同一个矩阵里
+ * 平移的边界按旋转之后的外接矩形和当前放缩系数计算，图片比View小的方向不能平移
+ * smallScale和bigScale按没有旋转的图片计算
+ */
+class ViewTransform {
+
+    private final Matrix matrix = new Matrix();
+    private boolean dirty = true;
+
+    private int viewWidth;
+    private int viewHeight;
+    private int imageWidth;
+    private int imageHeight;
+
+    /**
+     * 图片居中时左上角的位置
+     */
+    private float originOffsetX;
+    private float originOffsetY;
+
+    private float smallScale;
+    private float bigScale;
+    private float currentScale;
+
+    /**
+     * 放缩范围，以smallScale的倍数表示，maxZoom为0表示根据bigScale自动计算
+     */
+    private float minZoom = 1f;
+    private float maxZoom = 0f;
+    private float minScale;
+    private float maxScale;
+
+    /**
+     * 顺时针旋转的角度，[0, 360)
+     * 以及旋转之后外接矩形的尺寸，放缩之前
+     */
+    private float rotation;
+    private float boundsWidth;
+    private float boundsHeight;
+
+    /**
+     * 放缩之后的平移
+     */
+    private float offsetX;
+    private float offsetY;
+
+    /**
+     * 当前放缩系数下的平移边界
+     */
+    private float maxOffsetX;
+    private float maxOffsetY;
+
+    /**
+     * 双击放缩动画的起点和终点，动画过程中平移按放缩的完成度插值
+     */
+    private float animStartScale;
+    private float animStartOffsetX;
+    private float animStartOffsetY;
+    private float animEndScale;
+    private float animEndOffsetX;
+    private float animEndOffsetY;
+
+    /**
+     * View或者图片尺寸变化的时候重新计算，放缩系数回到smallScale
+     * @param overScaleFactor 在撑满另一个方向的基础上再放大的倍数
+     */
+    void setSize(int viewWidth, int viewHeight, int imageWidth, int imageHeight, float overScaleFactor) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        originOffsetX = (viewWidth - imageWidth) / 2f;
+        originOffsetY = (viewHeight - imageHeight) / 2f;
+
+        // 最小的Scale让图片完整显示，最大的Scale撑满另一个方向之后再放大一些
+        smallScale = ZoomMath.fitScale(viewWidth, viewHeight, imageWidth, imageHeight);
+        bigScale = ZoomMath.fillScale(viewWidth, viewHeight, imageWidth, imageHeight) * overScaleFactor;
+        updateScaleLimits();
+        offsetX = 0;
+        offsetY = 0;
+        setRotation(0);
+        setScale(smallScale);
+    }
+
+    /**
+     * 换图的时候调用，下次拿到图片之后一定重新计算
+     */
+    void clearSize() {
+        imageWidth = 0;
+        imageHeight = 0;
+    }
+
+    /**
+     * 设置放缩范围
+     * @param minZoom 最小放缩，smallScale的倍数
+     * @param maxZoom 最大放缩，smallScale的倍数，0表示bigScale的两倍
+     */
+    void setZoomLimits(float minZoom, float maxZoom) {
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        updateScaleLimits();
+        setScale(clampScale(currentScale));
+        fixOffset();
+    }
+
+    private void updateScaleLimits() {
+        minScale = smallScale * minZoom;
+        maxScale = maxZoom > 0 ? smallScale * maxZoom : bigScale * 2;
+        maxScale = Math.max(maxScale, minScale);
+    }
+
+    int getViewWidth() {
+        return viewWidth;
+    }
+
+    int getViewHeight() {
+        return viewHeight;
+    }
+
+    int getImageWidth() {
+        return imageWidth;
+    }
+
+    int getImageHeight() {
+        return imageHeight;
+    }
+
+    float getSmallScale() {
+        return smallScale;
+    }
+
+    float getBigScale() {
+        return bigScale;
+    }
+
+    float getScale() {
+        return currentScale;
+    }
+
+    /**
+     * 当前放缩是smallScale的多少倍，跟解码的分辨率无关
+     */
+    float getZoom() {
+        return smallScale == 0 ? 1 : currentScale / smallScale;
+    }
+
+    /**
+     * View中心对应的图片上的点，用图片宽高的比例表示，图片中心是(0.5, 0.5)
+     * 跟View尺寸和解码尺寸都无关，换了尺寸之后还能对准同一块内容
+     * @param out [x, y]
+     */
+    void getViewportCenter(float[] out) {
+        // 图片中心在View上的位置是 View中心 + 偏移，反过来转回图片坐标系
+        double radians = Math.toRadians(rotation);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float dx = (-offsetX * cos - offsetY * sin) / currentScale;
+        float dy = (offsetX * sin - offsetY * cos) / currentScale;
+        out[0] = imageWidth == 0 ? 0.5f : 0.5f + dx / imageWidth;
+        out[1] = imageHeight == 0 ? 0.5f : 0.5f + dy / imageHeight;
+    }
+
+    /**
+     * 恢复之前保存的放缩、旋转和位置，需要先setSize
+     * @param zoom smallScale的倍数，见{@link #getZoom()}
+     * @param rotation 顺时针旋转的角度
+     * @param centerX View中心对应的图片上的点，见{@link #getViewportCenter(float[])}
+     * @param centerY View中心对应的图片上的点
+     */
+    void restore(float zoom, float rotation, float centerX, float centerY) {
+        setRotation(rotation);
+        setScale(clampScale(smallScale * zoom));
+        // 这个点绕图片中心旋转、放缩之后移到View中心
+        double radians = Math.toRadians(this.rotation);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float dx = (centerX - 0.5f) * imageWidth;
+        float dy = (centerY - 0.5f) * imageHeight;
+        offsetX = -currentScale * (dx * cos - dy * sin);
+        offsetY = -currentScale * (dx * sin + dy * cos);
+        fixOffset();
+    }
+
+    /**
+     * 以View中心为轴放缩，平移不变，只更新边界
+     */
+    void setScale(float scale) {
+        currentScale = scale;
+        maxOffsetX = ZoomMath.maxOffset(boundsWidth, scale, viewWidth);
+        maxOffsetY = ZoomMath.maxOffset(boundsHeight, scale, viewHeight);
+        dirty = true;
+    }
+
+    float clampScale(float scale) {
+        return ZoomMath.clamp(scale, minScale, maxScale);
+    }
+
+    /**
+     * 以View上的某个点为中心放缩，这个点下面的图片内容保持不动
+     * @param scale 新的放缩系数，会被限制在放缩范围内
+     * @param focusX 放缩中心
+     * @param focusY 放缩中心
+     */
+    void zoomTo(float scale, float focusX, float focusY) {
+        scale = clampScale(scale);
+        float ratio = scale / currentScale;
+        offsetX = ZoomMath.zoomOffset(focusX, viewWidth / 2f, offsetX, ratio);
+        offsetY = ZoomMath.zoomOffset(focusY, viewHeight / 2f, offsetY, ratio);
+        setScale(scale);
+        fixOffset();
+    }
+
+    /**
+     * 准备一次放缩动画，终点的平移按终点的边界限制
+     * @param scale 终点的放缩系数
+     * @param focusX 放缩中心，终点时这个点下面的内容跟起点时一样
+     * @param focusY 放缩中心
+     */
+    void startZoomAnimation(float scale, float focusX, float focusY) {
+        animStartScale = currentScale;
+        animStartOffsetX = offsetX;
+        animStartOffsetY = offsetY;
+        animEndScale = clampScale(scale);
+
+        float ratio = animEndScale / currentScale;
+        animEndOffsetX = ZoomMath.clampOffset(ZoomMath.zoomOffset(focusX, viewWidth / 2f, offsetX, ratio),
+                ZoomMath.maxOffset(boundsWidth, animEndScale, viewWidth));
+        animEndOffsetY = ZoomMath.clampOffset(ZoomMath.zoomOffset(focusY, viewHeight / 2f, offsetY, ratio),
+                ZoomMath.maxOffset(boundsHeight, animEndScale, viewHeight));
+    }
+
+    float getAnimationStartScale() {
+        return animStartScale;
+    }
+
+    float getAnimationEndScale() {
+        return animEndScale;
+    }
+
+    /**
+     * 动画过程中设置放缩系数，平移按完成度在起点和终点之间插值
+     */
+    void setAnimatedScale(float scale) {
+        float fraction = animEndScale == animStartScale ? 1 : (scale - animStartScale) / (animEndScale - animStartScale);
+        offsetX = ZoomMath.lerp(animStartOffsetX, animEndOffsetX, fraction);
+        offsetY = ZoomMath.lerp(animStartOffsetY, animEndOffsetY, fraction);
+        setScale(scale);
+    }
+
+    float getRotation() {
+        return rotation;
+    }
+
+    /**
+     * 以View中心为轴旋转到某个角度，平移不变，只更新边界
+     */
+    private void setRotation(float degrees) {
+        rotation = ZoomMath.normalizeDegrees(degrees);
+        boundsWidth = ZoomMath.rotatedWidth(imageWidth, imageHeight, rotation);
+        boundsHeight = ZoomMath.rotatedHeight(imageWidth, imageHeight, rotation);
+        setScale(currentScale);
+    }
+
+    /**
+     * 以View上的某个点为中心旋转，这个点下面的图片内容保持不动
+     * @param degrees 顺时针旋转的角度
+     * @param focusX 旋转中心
+     * @param focusY 旋转中心
+     */
+    void rotateBy(float degrees, float focusX, float focusY) {
+        // 图片中心绕着旋转中心转同样的角度
+        double radians = Math.toRadians(degrees);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float centerX = viewWidth / 2f + offsetX - focusX;
+        float centerY = viewHeight / 2f + offsetY - focusY;
+        offsetX = focusX + centerX * cos - centerY * sin - viewWidth / 2f;
+        offsetY = focusY + centerX * sin + centerY * cos - viewHeight / 2f;
+        setRotation(rotation + degrees);
+        fixOffset();
+    }
+
+    float getOffsetX() {
+        return offsetX;
+    }
+
+    float getOffsetY() {
+        return offsetY;
+    }
+
+    float getMaxOffsetX() {
+        return maxOffsetX;
+    }
+
+    float getMaxOffsetY() {
+        return maxOffsetY;
+    }
+
+    /**
+     * 直接设置偏移，不做边界限制，惯性滑动的回弹需要超出边界
+     */
+    void setOffset(float x, float y) {
+        offsetX = x;
+        offsetY = y;
+        dirty = true;
+    }
+
+    /**
+     * 手指滑动，偏移限制在边界内
+     */
+    void offsetBy(float dx, float dy) {
+        setOffset(offsetX + dx, offsetY + dy);
+        fixOffset();
+    }
+
+    /**
+     * 处理放大或者滑动之后的边界问题
+     * 也就是若方法或者滑动之后边界超出屏幕，则撑满屏幕即可
+     */
+    private void fixOffset() {
+        offsetX = ZoomMath.clampOffset(offsetX, maxOffsetX);
+        offsetY = ZoomMath.clampOffset(offsetY, maxOffsetY);
+    }
+
+    /**
+     * 图片坐标系 → View坐标系 的矩阵，等价于
+     * translate(offset) + scale(currentScale, 中心点) + rotate(rotation, 中心点) + translate(originOffset)
+     */
+    Matrix getMatrix() {
+        if (dirty) {
+            matrix.setTranslate(originOffsetX, originOffsetY);
+            matrix.postRotate(rotation, viewWidth / 2f, viewHeight / 2f);
+            matrix.postScale(currentScale, currentScale, viewWidth / 2f, viewHeight / 2f);
+            matrix.postTranslate(offsetX, offsetY);
+            dirty = false;
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.scalableimageview;
+
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 复用池的命中、未命中、复用字节数和淘汰统计
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BitmapPoolTest {
+
+    private final BitmapPool pool = BitmapPool.getInstance();
+    private long maxSize;
+
+    @Before
+    public void setUp() {
+        maxSize = pool.getMaxSize();
+        pool.clear();
+        pool.resetStats();
+    }
+
+    @After
+    public void tearDown() {
+        pool.setMaxSize(maxSize);
+        pool.clear();
+        pool.resetStats();
+    }
+
+    @Test
+    public void emptyPoolMisses() {
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertEquals(0, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        assertEquals(0, pool.getReusedBytes());
+    }
+
+    @Test
+    public void sameSizeAndConfigIsReused() {
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+        assertEquals(1, pool.getPutCount());
+        assertEquals(bitmap.getAllocationByteCount(), pool.getSize());
+
+        assertSame(bitmap, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(0, pool.getMissCount());
+        assertEquals(bitmap.getAllocationByteCount(), pool.getReusedBytes());
+        assertEquals(0, pool.getSize());
+
+        // 已经取走了
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertEquals(1, pool.getMissCount());
+    }
+
+    @Test
+    public void otherSizeOrConfigMisses() {
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+        assertNull(pool.get(20, 10, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(10, 10, Bitmap.Config.RGB_565));
+        assertEquals(0, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        assertEquals(bitmap.getAllocationByteCount(), pool.getSize());
+    }
+
+    @Test
+    public void immutableAndRecycledAreDropped() {
+        Bitmap immutable = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888).copy(Bitmap.Config.ARGB_8888, false);
+        Bitmap recycled = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        recycled.recycle();
+        pool.put(immutable);
+        pool.put(recycled);
+        pool.put(null);
+        assertEquals(0, pool.getPutCount());
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void samePutTwiceCountsOnce() {
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+        pool.put(bitmap);
+        assertEquals(1, pool.getPutCount());
+        assertEquals(bitmap.getAllocationByteCount(), pool.getSize());
+    }
+
+    @Test
+    public void oldestIsEvictedOverMaxSize() {
+        Bitmap first = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap third = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        int bytes = first.getAllocationByteCount();
+        pool.setMaxSize(bytes * 2);
+        pool.put(first);
+        pool.put(second);
+        pool.put(third);
+        assertEquals(1, pool.getEvictionCount());
+        assertEquals(bytes * 2, pool.getSize());
+
+        // 同一个桶里先取最近放进去的
+        assertSame(third, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertSame(second, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+}
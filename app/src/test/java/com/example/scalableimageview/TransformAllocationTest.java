@@ -0,0 +1,176 @@
+package com.example.scalableimageview;
+
+import android.graphics.Matrix;
+import android.view.Choreographer;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.LooperMode;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 手势和动画每一帧走的路径不分配对象：ViewTransform的放缩、旋转、平移、getMatrix，以及TransformAnimator的doFrame
+ * 用ThreadMXBean统计当前线程分配的字节数，先跑一遍让类加载、Choreographer的回调记录池填满
+ *
+ * 真机上Matrix的计算在native层，Robolectric默认的ShadowMatrix每次操作都拼字符串，
+ * 这里换成只做仿射计算的shadow，统计到的就只有ViewTransform和TransformAnimator自己的分配
+ * 主线程Looper暂停，Choreographer不会自己回调，帧时间由测试直接传给doFrame
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, shadows = TransformAllocationTest.AffineMatrixShadow.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class TransformAllocationTest {
+
+    private static final int FRAMES = 100000;
+    private static final long FRAME_NANOS = 1000000000L / 120;
+
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 2160;
+    private static final int IMAGE_WIDTH = 900;
+    private static final int IMAGE_HEIGHT = 675;
+
+    private final ViewTransform transform = new ViewTransform();
+    private final TransformAnimator animator = new TransformAnimator(transform, new TransformAnimator.Listener() {
+        @Override
+        public void onAnimationFrame() {
+            transform.getMatrix();
+        }
+
+        @Override
+        public void onAnimationSettled() {
+        }
+    });
+
+    private long animationStart;
+    private int animationFrames;
+    private int animationCount;
+
+    @Test
+    public void gestureAndAnimationFramesDoNotAllocate() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+        transform.setSize(VIEW_WIDTH, VIEW_HEIGHT, IMAGE_WIDTH, IMAGE_HEIGHT, 1.5f);
+        Matrix matrix = transform.getMatrix();
+        runFrames(1000);
+
+        long threadId = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(threadId);
+        runFrames(FRAMES);
+        long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+
+        assertSame(matrix, transform.getMatrix());
+        // 统计本身可能分配一点点，跟帧数无关；每帧哪怕分配一个对象也会超出很多
+        assertTrue("allocated " + allocated + " bytes in " + FRAMES + " frames", allocated < 1024);
+    }
+
+    /**
+     * 一半的帧是手指捏撑、旋转、拖动，另一半是惯性滑动和双击放缩动画
+     */
+    private void runFrames(int frames) {
+        for (int i = 0; i < frames; i++) {
+            if (i % 2 == 0) {
+                float scale = transform.getScale() * 1.01f;
+                if (scale >= transform.getBigScale() * 2) {
+                    scale = transform.getSmallScale();
+                }
+                transform.zoomTo(scale, 300, 900);
+                transform.rotateBy(0.5f, 540, 1080);
+                transform.offsetBy(3, -2);
+                transform.getMatrix();
+            } else {
+                if (!animator.isRunning()) {
+                    startAnimation();
+                }
+                animator.doFrame(animationStart + ++animationFrames * FRAME_NANOS);
+                // 相当于Choreographer执行掉这一帧的回调，记录还回池里
+                Choreographer.getInstance().removeFrameCallback(animator);
+            }
+        }
+    }
+
+    private void startAnimation() {
+        animationStart = System.nanoTime();
+        animationFrames = 0;
+        if (animationCount++ % 2 == 0) {
+            animator.fling(3000, -2000, 50);
+        } else {
+            float scale = transform.getScale() < transform.getBigScale()
+                    ? transform.getBigScale() : transform.getSmallScale();
+            animator.zoomTo(scale, 540, 1080);
+        }
+    }
+
+    /**
+     * 只做仿射计算的Matrix，跟native实现一样每次操作不分配对象
+     * 第三行固定是 0 0 1
+     */
+    @Implements(Matrix.class)
+    public static class AffineMatrixShadow {
+
+        private float scaleX = 1;
+        private float skewX;
+        private float translateX;
+        private float skewY;
+        private float scaleY = 1;
+        private float translateY;
+
+        @Implementation
+        protected void reset() {
+            setValues(1, 0, 0, 0, 1, 0);
+        }
+
+        @Implementation
+        protected void setTranslate(float dx, float dy) {
+            setValues(1, 0, dx, 0, 1, dy);
+        }
+
+        @Implementation
+        protected boolean postTranslate(float dx, float dy) {
+            translateX += dx;
+            translateY += dy;
+            return true;
+        }
+
+        @Implementation
+        protected boolean postScale(float sx, float sy, float px, float py) {
+            post(sx, 0, px - sx * px, 0, sy, py - sy * py);
+            return true;
+        }
+
+        @Implementation
+        protected boolean postRotate(float degrees, float px, float py) {
+            double radians = Math.toRadians(degrees);
+            float cos = (float) Math.cos(radians);
+            float sin = (float) Math.sin(radians);
+            post(cos, -sin, px - cos * px + sin * py, sin, cos, py - sin * px - cos * py);
+            return true;
+        }
+
+        /**
+         * this = [a b c; d e f] * this
+         */
+        private void post(float a, float b, float c, float d, float e, float f) {
+            setValues(a * scaleX + b * skewY, a * skewX + b * scaleY, a * translateX + b * translateY + c,
+                    d * scaleX + e * skewY, d * skewX + e * scaleY, d * translateX + e * translateY + f);
+        }
+
+        private void setValues(float scaleX, float skewX, float translateX, float skewY, float scaleY, float translateY) {
+            this.scaleX = scaleX;
+            this.skewX = skewX;
+            this.translateX = translateX;
+            this.skewY = skewY;
+            this.scaleY = scaleY;
+            this.translateY = translateY;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.scalableimageview;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 绘制耗时、触摸延迟、丢帧和重绘像素的统计
+ * 主线程Looper暂停，Choreographer不会自己回调，帧时间由测试直接传给doFrame
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ViewMetricsTest {
+
+    private static final long FRAME_NANOS = 1000000000L / 60;
+
+    private final ViewMetrics metrics = new ViewMetrics();
+
+    @Test
+    public void latencyIsMeasuredFromTheEarliestPendingEvent() {
+        long now = SystemClock.uptimeMillis();
+        MotionEvent down = MotionEvent.obtain(now - 5, now - 5, MotionEvent.ACTION_DOWN, 0, 0, 0);
+        MotionEvent move = MotionEvent.obtain(now - 5, now - 2, MotionEvent.ACTION_MOVE, 1, 1, 0);
+        metrics.onEvent(down);
+        metrics.onEvent(move);
+        metrics.beginDraw();
+        metrics.endDraw();
+
+        assertEquals(1, metrics.getDrawHistogram().getCount());
+        assertEquals(1, metrics.getLatencyHistogram().getCount());
+        assertEquals(5f, metrics.getLatencyHistogram().getMaxMillis(), 1e-6f);
+
+        // 没有新的事件，下一次绘制不记录延迟
+        metrics.beginDraw();
+        metrics.endDraw();
+        assertEquals(2, metrics.getDrawHistogram().getCount());
+        assertEquals(1, metrics.getLatencyHistogram().getCount());
+        down.recycle();
+        move.recycle();
+    }
+
+    @Test
+    public void longFrameIntervalsCountDroppedFrames() {
+        long base = 1000000000L;
+        metrics.beginDraw();
+        metrics.endDraw();
+        // 第一帧只作为起点
+        metrics.doFrame(base);
+        assertEquals(0, metrics.getFrameCount());
+
+        metrics.beginDraw();
+        metrics.endDraw();
+        metrics.doFrame(base + FRAME_NANOS);
+        assertEquals(1, metrics.getFrameCount());
+        assertEquals(0, metrics.getDroppedFrames());
+
+        metrics.beginDraw();
+        metrics.endDraw();
+        metrics.doFrame(base + 4 * FRAME_NANOS);
+        assertEquals(2, metrics.getFrameCount());
+        assertEquals(2, metrics.getDroppedFrames());
+        assertEquals(2, metrics.getFrameHistogram().getCount());
+
+        // 没有绘制的帧间隔再长也不算
+        metrics.doFrame(base + 10 * FRAME_NANOS);
+        assertEquals(2, metrics.getFrameCount());
+        assertEquals(2, metrics.getDroppedFrames());
+    }
+
+    @Test
+    public void dirtyPixelsAndReset() {
+        metrics.recordDirtyPixels(100);
+        metrics.recordDirtyPixels(300);
+        assertEquals(300, metrics.getLastDirtyPixels());
+        assertEquals(400, metrics.getTotalDirtyPixels());
+        assertEquals(200, metrics.getAverageDirtyPixels());
+
+        metrics.beginDraw();
+        metrics.endDraw();
+        metrics.reset();
+        assertEquals(0, metrics.getLastDirtyPixels());
+        assertEquals(0, metrics.getAverageDirtyPixels());
+        assertEquals(0, metrics.getDrawHistogram().getCount());
+        assertEquals(0, metrics.getFrameCount());
+    }
+
+    @Test
+    public void disabledMetricsRecordNothing() {
+        metrics.setEnabled(false);
+        metrics.beginDraw();
+        metrics.endDraw();
+        metrics.recordDirtyPixels(100);
+        assertEquals(0, metrics.getDrawHistogram().getCount());
+        assertEquals(0, metrics.getTotalDirtyPixels());
+    }
+
+    @Test
+    public void bitmapIsNotAffectedByReset() {
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.RGB_565);
+        metrics.recordBitmap(bitmap);
+        metrics.reset();
+        assertEquals(Bitmap.Config.RGB_565, metrics.getBitmapConfig());
+        assertEquals(bitmap.getAllocationByteCount(), metrics.getBitmapBytes());
+
+        metrics.recordBitmap(null);
+        assertNull(metrics.getBitmapConfig());
+        assertEquals(0, metrics.getBitmapBytes());
+    }
+}
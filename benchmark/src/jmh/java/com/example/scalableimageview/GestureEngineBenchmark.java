@@ -0,0 +1,113 @@
+package com.example.scalableimageview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 手势引擎的基准（GestureEngine.onEvent）
+ * 每次操作处理一秒钟的触摸事件：所有手指按下，移动，再逐个抬起
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GestureEngineBenchmark {
+
+    /**
+     * 触摸采样率，Hz
+     */
+    @Param({"60", "120", "240"})
+    public int rate;
+
+    /**
+     * 同时按下的手指数量，2是捏撑加旋转，10是十指乱动
+     */
+    @Param({"2", "10"})
+    public int pointers;
+
+    private final int[] ids = new int[10];
+    private float[][] xs;
+    private float[][] ys;
+
+    private final Sink sink = new Sink();
+    private GestureEngine engine;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        xs = new float[rate][pointers];
+        ys = new float[rate][pointers];
+        for (int p = 0; p < pointers; p++) {
+            ids[p] = p;
+        }
+        for (int i = 0; i < rate; i++) {
+            float t = (float) i / rate;
+            for (int p = 0; p < pointers; p++) {
+                if (pointers == 2) {
+                    // 两根手指绕中心转半圈，距离从100拉到400
+                    double angle = Math.PI * (t + p);
+                    float radius = 100 + 300 * t;
+                    xs[i][p] = 540 + radius * (float) Math.cos(angle);
+                    ys[i][p] = 1080 + radius * (float) Math.sin(angle);
+                } else {
+                    xs[i][p] = random.nextFloat() * 1080;
+                    ys[i][p] = random.nextFloat() * 2160;
+                }
+            }
+        }
+        engine = new GestureEngine(sink);
+        engine.setTouchSlop(16);
+        engine.setDoubleTapSlop(200);
+    }
+
+    @Benchmark
+    public float gesture() {
+        long time = 0;
+        long step = 1000 / rate;
+        engine.onEvent(GestureEngine.ACTION_DOWN, 0, 1, ids, xs[0], ys[0], time);
+        for (int p = 1; p < pointers; p++) {
+            engine.onEvent(GestureEngine.ACTION_POINTER_DOWN, p, p + 1, ids, xs[0], ys[0], time);
+        }
+        for (int i = 1; i < rate; i++) {
+            time += step;
+            engine.onEvent(GestureEngine.ACTION_MOVE, 0, pointers, ids, xs[i], ys[i], time);
+        }
+        float[] lastXs = xs[rate - 1];
+        float[] lastYs = ys[rate - 1];
+        for (int p = pointers - 1; p > 0; p--) {
+            engine.onEvent(GestureEngine.ACTION_POINTER_UP, p, p + 1, ids, lastXs, lastYs, time);
+        }
+        engine.onEvent(GestureEngine.ACTION_UP, 0, 1, ids, lastXs, lastYs, time);
+        return sink.sum;
+    }
+
+    /**
+     * 累加回调的参数，防止被优化掉
+     */
+    private static class Sink extends GestureEngine.SimpleListener {
+        float sum;
+
+        @Override
+        public void onPointerMove(int pointerId, float x, float y, long time) {
+            sum += x;
+        }
+
+        @Override
+        public void onTransform(float focusX, float focusY, float dx, float dy, float scale, float rotation) {
+            sum += dx + scale + rotation;
+        }
+
+        @Override
+        public void onGestureEnd(boolean moved, float velocityX, float velocityY) {
+            sum += velocityX;
+        }
+    }
+}
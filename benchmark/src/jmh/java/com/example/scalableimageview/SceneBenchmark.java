@@ -0,0 +1,99 @@
+package com.example.scalableimageview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拼贴画布的基准（MultiTouchView2的点击查找和每帧的变换、裁剪）
+ * 图片随机散布在一屏里，大小、放缩、旋转各不相同
+ * 每次操作处理一秒钟的事件
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SceneBenchmark {
+
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 2160;
+
+    /**
+     * 触摸采样率，Hz
+     */
+    @Param({"60", "120", "240"})
+    public int rate;
+
+    /**
+     * 画布上的图片数量
+     */
+    @Param({"100", "500", "2000"})
+    public int items;
+
+    private Scene scene;
+    private float[] tapXs;
+    private float[] tapYs;
+    private final float[] dirty = new float[4];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        scene = new Scene();
+        for (int i = 0; i < items; i++) {
+            scene.add(100 + random.nextFloat() * 400, 100 + random.nextFloat() * 400,
+                    random.nextFloat() * VIEW_WIDTH, random.nextFloat() * VIEW_HEIGHT,
+                    0.3f + random.nextFloat(), random.nextFloat() * 360);
+        }
+        tapXs = new float[rate];
+        tapYs = new float[rate];
+        for (int i = 0; i < rate; i++) {
+            tapXs[i] = random.nextFloat() * VIEW_WIDTH;
+            tapYs[i] = random.nextFloat() * VIEW_HEIGHT;
+        }
+        scene.takeDirty(dirty);
+    }
+
+    /**
+     * 每个事件查找一次手指下面的图
+     */
+    @Benchmark
+    public int hitTest() {
+        int found = 0;
+        for (int i = 0; i < rate; i++) {
+            SceneItem item = scene.hitTest(tapXs[i], tapYs[i]);
+            if (item != null) {
+                found += item.getId();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 拖着最上面的一张图一边放缩一边旋转，每个事件之后按脏区域挑出要重画的图，
+     * 也就是onDraw里除了真正画图之外的所有工作
+     */
+    @Benchmark
+    public int pinchFrame() {
+        SceneItem active = scene.getItem(scene.getItemCount() - 1);
+        int drawn = 0;
+        for (int i = 0; i < rate; i++) {
+            float direction = i < rate / 2 ? 1 : -1;
+            scene.transform(active, active.getCenterX(), active.getCenterY(),
+                    direction * 2, direction, 1 + direction * 0.002f, direction * 0.5f);
+            scene.takeDirty(dirty);
+            for (int j = 0; j < scene.getItemCount(); j++) {
+                if (scene.getItem(j).intersects(dirty[0], dirty[1], dirty[2], dirty[3])) {
+                    drawn++;
+                }
+            }
+        }
+        return drawn;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.scalableimageview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 笔迹空间索引的基准（MultiTouchView4的裁剪和点击查询）
+ * 笔迹分布在一张随数量变大的画布上，密度不变，每次查询的结果数量差不多，
+ * 对比索引和挨个遍历外接矩形的耗时随笔迹数量的变化
+ * 每次操作做QUERIES次查询
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialIndexBenchmark {
+
+    private static final int QUERIES = 100;
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 2160;
+
+    /**
+     * 画完的笔迹数量
+     */
+    @Param({"1000", "10000", "100000"})
+    public int strokes;
+
+    private float[] bounds;
+    private float[] queryXs;
+    private float[] queryYs;
+    private SpatialIndex index;
+    private final Counter counter = new Counter();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        // 平均每屏100条笔迹
+        float side = (float) Math.sqrt(strokes / 100f) * VIEW_HEIGHT;
+        bounds = new float[strokes * 4];
+        index = new SpatialIndex();
+        for (int i = 0; i < strokes; i++) {
+            float left = random.nextFloat() * side;
+            float top = random.nextFloat() * side;
+            float right = left + 20 + random.nextFloat() * 300;
+            float bottom = top + 20 + random.nextFloat() * 300;
+            bounds[i * 4] = left;
+            bounds[i * 4 + 1] = top;
+            bounds[i * 4 + 2] = right;
+            bounds[i * 4 + 3] = bottom;
+            index.insert(i, left, top, right, bottom);
+        }
+        queryXs = new float[QUERIES];
+        queryYs = new float[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queryXs[i] = random.nextFloat() * side;
+            queryYs[i] = random.nextFloat() * side;
+        }
+    }
+
+    /**
+     * 一屏大小的范围，相当于整屏重绘时的裁剪
+     */
+    @Benchmark
+    public int searchViewport() {
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            found += index.search(queryXs[i], queryYs[i], queryXs[i] + VIEW_WIDTH, queryYs[i] + VIEW_HEIGHT, counter);
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int searchPoint() {
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            found += index.searchPoint(queryXs[i], queryYs[i], counter);
+        }
+        return found;
+    }
+
+    /**
+     * 对照：挨个比较外接矩形
+     */
+    @Benchmark
+    public int scanViewport() {
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            float left = queryXs[i];
+            float top = queryYs[i];
+            float right = left + VIEW_WIDTH;
+            float bottom = top + VIEW_HEIGHT;
+            for (int s = 0; s < strokes; s++) {
+                int b = s * 4;
+                if (bounds[b] <= right && bounds[b + 2] >= left && bounds[b + 1] <= bottom && bounds[b + 3] >= top) {
+                    counter.visit(s);
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 建索引的耗时，笔迹逐条插入
+     */
+    @Benchmark
+    public int build() {
+        SpatialIndex built = new SpatialIndex();
+        for (int i = 0; i < strokes; i++) {
+            built.insert(i, bounds[i * 4], bounds[i * 4 + 1], bounds[i * 4 + 2], bounds[i * 4 + 3]);
+        }
+        return built.size();
+    }
+
+    private static class Counter implements SpatialIndex.Visitor {
+        int sum;
+
+        @Override
+        public void visit(int id) {
+            sum += id;
+        }
+    }
+}
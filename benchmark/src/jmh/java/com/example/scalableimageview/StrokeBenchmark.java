@@ -0,0 +1,97 @@
+package com.example.scalableimageview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 笔迹化简和平滑的基准（MultiTouchView4）
+ * 每次操作处理一条持续若干秒的笔迹，加入所有采样点之后输出一次完整的曲线
+ * raw是每个采样点一个lineTo的原始做法，输出的段数就是Path里的段数
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StrokeBenchmark {
+
+    /**
+     * 触摸采样率，Hz
+     */
+    @Param({"60", "120", "240"})
+    public int rate;
+
+    /**
+     * 笔迹持续的秒数
+     */
+    @Param({"1", "10"})
+    public int seconds;
+
+    private float[] xs;
+    private float[] ys;
+    private Stroke stroke;
+    private CountingSink sink = new CountingSink();
+
+    @Setup
+    public void setUp() {
+        // 一个慢慢移动的圆圈，加上一点手抖
+        Random random = new Random(42);
+        int samples = rate * seconds;
+        xs = new float[samples];
+        ys = new float[samples];
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / rate;
+            xs[i] = (float) (540 + 300 * Math.cos(t * 2) + t * 10 + random.nextGaussian() * 0.5);
+            ys[i] = (float) (1080 + 300 * Math.sin(t * 2) + random.nextGaussian() * 0.5);
+        }
+        // 跟MultiTouchView4一样的容差，按3倍屏的dp换算
+        stroke = new Stroke(6, 1.5f, 10);
+    }
+
+    @Benchmark
+    public int simplified() {
+        stroke.reset();
+        for (int i = 0; i < xs.length; i++) {
+            stroke.add(xs[i], ys[i]);
+        }
+        sink.segments = 0;
+        stroke.build(sink);
+        return sink.segments;
+    }
+
+    @Benchmark
+    public int raw() {
+        sink.segments = 0;
+        sink.moveTo(xs[0], ys[0]);
+        for (int i = 1; i < xs.length; i++) {
+            sink.lineTo(xs[i], ys[i]);
+        }
+        return sink.segments;
+    }
+
+    private static class CountingSink implements Stroke.PathSink {
+
+        int segments;
+
+        @Override
+        public void moveTo(float x, float y) {
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+            segments++;
+        }
+
+        @Override
+        public void quadTo(float x1, float y1, float x2, float y2) {
+            segments++;
+        }
+    }
+}
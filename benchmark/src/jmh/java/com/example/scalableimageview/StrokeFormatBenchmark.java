@@ -0,0 +1,93 @@
+package com.example.scalableimageview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 笔迹文件编码和流式解码的基准（StrokeStorage）
+ * 每次操作处理一分钟的录制：每秒一笔，笔画之间抬手
+ * 编码在主线程执行，平均到每个采样点的耗时就是录制给触摸事件增加的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StrokeFormatBenchmark {
+
+    private static final int SECONDS = 60;
+
+    /**
+     * 触摸采样率，Hz
+     */
+    @Param({"60", "120", "240"})
+    public int rate;
+
+    private float[] xs;
+    private float[] ys;
+    private ByteBuffer buffer;
+    private byte[] encoded;
+    private StrokeEvents events = new StrokeEvents(512);
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int samples = rate * SECONDS;
+        xs = new float[samples];
+        ys = new float[samples];
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / rate;
+            xs[i] = (float) (540 + 300 * Math.cos(t * 3) + random.nextGaussian());
+            ys[i] = (float) (1080 + 300 * Math.sin(t * 2) + random.nextGaussian());
+        }
+        buffer = ByteBuffer.allocate(samples * StrokeFormat.MAX_RECORD_BYTES + 64);
+        encode();
+        encoded = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(encoded);
+    }
+
+    @Benchmark
+    public int encode() {
+        buffer.clear();
+        StrokeEncoder encoder = new StrokeEncoder();
+        encoder.setBuffer(buffer);
+        encoder.writeHeader();
+        long time = 0;
+        for (int i = 0; i < xs.length; i++) {
+            time += 1000 / rate;
+            if (i % rate == 0) {
+                encoder.onDown(0, time, xs[i], ys[i]);
+            } else {
+                encoder.onMove(0, time, xs[i], ys[i]);
+            }
+            if (i % rate == rate - 1) {
+                encoder.onUp(0, time);
+            }
+        }
+        return buffer.position();
+    }
+
+    @Benchmark
+    public int decode() throws IOException {
+        StrokeReader reader = new StrokeReader(Channels.newChannel(new ByteArrayInputStream(encoded)), 8 * 1024);
+        int total = 0;
+        int count;
+        while ((count = reader.read(events, 512)) >= 0) {
+            total += count;
+            events.clear();
+        }
+        return total;
+    }
+}
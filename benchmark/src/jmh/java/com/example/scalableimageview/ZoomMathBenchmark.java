@@ -0,0 +1,109 @@
+package com.example.scalableimageview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 放缩和偏移计算的基准
+ * 每次操作处理一秒钟的触摸事件，事件数等于触摸采样率
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ZoomMathBenchmark {
+
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 2160;
+    private static final int IMAGE_WIDTH = 900;
+    private static final int IMAGE_HEIGHT = 1200;
+
+    /**
+     * 触摸采样率，Hz
+     */
+    @Param({"60", "120", "240"})
+    public int rate;
+
+    private float[] deltaX;
+    private float[] deltaY;
+    private float[] focusX;
+    private float[] focusY;
+    private float[] ratios;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        deltaX = new float[rate];
+        deltaY = new float[rate];
+        focusX = new float[rate];
+        focusY = new float[rate];
+        ratios = new float[rate];
+        for (int i = 0; i < rate; i++) {
+            deltaX[i] = (random.nextFloat() - 0.5f) * 40;
+            deltaY[i] = (random.nextFloat() - 0.5f) * 40;
+            focusX[i] = random.nextFloat() * VIEW_WIDTH;
+            focusY[i] = random.nextFloat() * VIEW_HEIGHT;
+            ratios[i] = 0.97f + random.nextFloat() * 0.06f;
+        }
+    }
+
+    /**
+     * onSizeChanged：计算smallScale、bigScale和边界
+     */
+    @Benchmark
+    public void layout(Blackhole blackhole) {
+        float smallScale = ZoomMath.fitScale(VIEW_WIDTH, VIEW_HEIGHT, IMAGE_WIDTH, IMAGE_HEIGHT);
+        float bigScale = ZoomMath.fillScale(VIEW_WIDTH, VIEW_HEIGHT, IMAGE_WIDTH, IMAGE_HEIGHT) * 1.5f;
+        blackhole.consume(smallScale);
+        blackhole.consume(ZoomMath.maxOffset(IMAGE_WIDTH, bigScale, VIEW_WIDTH));
+        blackhole.consume(ZoomMath.maxOffset(IMAGE_HEIGHT, bigScale, VIEW_HEIGHT));
+    }
+
+    /**
+     * 拖动：每个事件累加偏移再限制在边界内（fixOffset）
+     */
+    @Benchmark
+    public float scroll() {
+        float bigScale = ZoomMath.fillScale(VIEW_WIDTH, VIEW_HEIGHT, IMAGE_WIDTH, IMAGE_HEIGHT) * 1.5f;
+        float maxOffsetX = ZoomMath.maxOffset(IMAGE_WIDTH, bigScale, VIEW_WIDTH);
+        float maxOffsetY = ZoomMath.maxOffset(IMAGE_HEIGHT, bigScale, VIEW_HEIGHT);
+        float offsetX = 0;
+        float offsetY = 0;
+        for (int i = 0; i < rate; i++) {
+            offsetX = ZoomMath.clampOffset(offsetX + deltaX[i], maxOffsetX);
+            offsetY = ZoomMath.clampOffset(offsetY + deltaY[i], maxOffsetY);
+        }
+        return offsetX + offsetY;
+    }
+
+    /**
+     * 双指放缩：每个事件以焦点为中心放缩，重新计算边界并限制偏移
+     */
+    @Benchmark
+    public float pinch() {
+        float smallScale = ZoomMath.fitScale(VIEW_WIDTH, VIEW_HEIGHT, IMAGE_WIDTH, IMAGE_HEIGHT);
+        float maxScale = ZoomMath.fillScale(VIEW_WIDTH, VIEW_HEIGHT, IMAGE_WIDTH, IMAGE_HEIGHT) * 3;
+        float scale = smallScale * 2;
+        float offsetX = 0;
+        float offsetY = 0;
+        for (int i = 0; i < rate; i++) {
+            float newScale = ZoomMath.clamp(scale * ratios[i], smallScale, maxScale);
+            float ratio = newScale / scale;
+            offsetX = ZoomMath.zoomOffset(focusX[i], VIEW_WIDTH / 2f, offsetX, ratio);
+            offsetY = ZoomMath.zoomOffset(focusY[i], VIEW_HEIGHT / 2f, offsetY, ratio);
+            scale = newScale;
+            offsetX = ZoomMath.clampOffset(offsetX, ZoomMath.maxOffset(IMAGE_WIDTH, scale, VIEW_WIDTH));
+            offsetY = ZoomMath.clampOffset(offsetY, ZoomMath.maxOffset(IMAGE_HEIGHT, scale, VIEW_HEIGHT));
+        }
+        return scale + offsetX + offsetY;
+    }
+}
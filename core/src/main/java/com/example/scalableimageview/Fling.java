@@ -0,0 +1,100 @@
+package com.example.scalableimageview;
+
+/**
+ * 一个方向上的惯性滑动，按帧间隔推进，位置和速度都是float，不丢掉不足一个像素的移动
+ * 范围内速度按指数衰减；超出范围之后用临界阻尼的弹簧拉回边界，最多超出overscroll
+ *
+ * 位置不存在这里，每一步由调用方传进来，
+ * 所以滑动的同时位置被别的动画改了（比如放缩改变了边界、旋转改变了偏移）也能接着滑
+ */
+public final class Fling {
+
+    /**
+     * 每秒速度衰减到 e^-FRICTION
+     */
+    private static final float FRICTION = 4f;
+
+    /**
+     * 弹簧的角频率，越大拉回得越快
+     */
+    private static final float SPRING = 18f;
+
+    /**
+     * 速度低于这个值并且在范围内就停下来，像素/秒
+     */
+    private static final float STOP_VELOCITY = 10f;
+
+    /**
+     * 弹簧部分每一小步的最长时间，掉帧的时候也稳定
+     */
+    private static final float MAX_STEP = 0.004f;
+
+    private float velocity;
+    private boolean finished = true;
+
+    /**
+     * @param velocity 初速度，像素/秒
+     */
+    public void start(float velocity) {
+        this.velocity = velocity;
+        finished = false;
+    }
+
+    public void stop() {
+        velocity = 0;
+        finished = true;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public float getVelocity() {
+        return finished ? 0 : velocity;
+    }
+
+    /**
+     * 在范围内滑了一段时间之后剩下的速度
+     */
+    public static float decay(float velocity, float seconds) {
+        return velocity * (float) Math.exp(-FRICTION * seconds);
+    }
+
+    /**
+     * 往前推进一帧
+     * @param position 当前位置
+     * @param seconds 距离上一帧的时间
+     * @param min 范围
+     * @param max 范围
+     * @param overscroll 最多能超出范围多少
+     * @return 新的位置
+     */
+    public float step(float position, float seconds, float min, float max, float overscroll) {
+        if (finished) {
+            return position;
+        }
+        while (seconds > 0) {
+            float dt = Math.min(seconds, MAX_STEP);
+            seconds -= dt;
+            float bound = position < min ? min : position > max ? max : position;
+            if (bound == position) {
+                velocity = decay(velocity, dt);
+            } else {
+                // 临界阻尼：加速度 = -k·x - 2√k·v
+                float stretch = position - bound;
+                velocity += (-SPRING * SPRING * stretch - 2 * SPRING * velocity) * dt;
+            }
+            position += velocity * dt;
+            if (position < min - overscroll || position > max + overscroll) {
+                position = ZoomMath.clamp(position, min - overscroll, max + overscroll);
+                velocity = 0;
+            }
+        }
+        float bound = ZoomMath.clamp(position, min, max);
+        if (Math.abs(velocity) < STOP_VELOCITY && Math.abs(position - bound) < 0.5f) {
+            stop();
+            return bound;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,510 @@
+package com.example.scalableimageview;
+
+/**
+ * 多指手势引擎
+ * 一个引擎同时给出平移、捏撑放缩、旋转、惯性速度、双击以及每根手指各自的采样点
+ * 手指状态存在按手指id下标的基本类型数组里，处理事件的过程中不分配对象
+ *
+ * 输入是按时间顺序的事件，每个事件带上所有按下手指的id和坐标，动作常量跟MotionEvent一致
+ * 不依赖Android，可以在JVM上用构造出来的事件序列测试和跑基准
+ *
+ * 平移、放缩和旋转都以所有按下手指的中心点为基准，手指增减的时候重新取基准，画面不会跳
+ */
+public final class GestureEngine {
+
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+    public static final int ACTION_CANCEL = 3;
+    public static final int ACTION_POINTER_DOWN = 5;
+    public static final int ACTION_POINTER_UP = 6;
+
+    /**
+     * 双击的两次按下间隔，跟ViewConfiguration的默认值一致，毫秒
+     */
+    private static final long DOUBLE_TAP_TIMEOUT = 300;
+    private static final long DOUBLE_TAP_MIN_TIME = 40;
+
+    /**
+     * 计算速度只用最近这段时间内的采样，手指停下超过ASSUME_STOPPED_MILLIS认为速度是0，毫秒
+     */
+    private static final long VELOCITY_HORIZON = 100;
+    private static final long ASSUME_STOPPED_MILLIS = 40;
+    private static final int VELOCITY_SAMPLES = 20;
+
+    /**
+     * 回调都在处理事件的线程里同步执行
+     */
+    public interface Listener {
+
+        /**
+         * 一根手指按下，第一根手指按下的时候手势开始
+         */
+        void onPointerDown(int pointerId, float x, float y, long time);
+
+        /**
+         * 一根手指的一个采样点，MOVE事件里合并的历史采样也会逐个回调
+         */
+        void onPointerMove(int pointerId, float x, float y, long time);
+
+        /**
+         * 一根手指抬起或者被取消
+         */
+        void onPointerUp(int pointerId, long time);
+
+        /**
+         * 中心点移动超过触摸阈值之后，每个采样回调一次相对上一次的变化
+         * @param focusX 当前的中心点
+         * @param focusY 当前的中心点
+         * @param dx 中心点的平移
+         * @param dy 中心点的平移
+         * @param scale 以中心点为轴的放缩倍数，单指的时候是1
+         * @param rotation 以中心点为轴旋转的角度，顺时针为正，单指的时候是0
+         */
+        void onTransform(float focusX, float focusY, float dx, float dy, float scale, float rotation);
+
+        /**
+         * 最后一根手指抬起或者取消
+         * @param moved 中心点是否移动超过了触摸阈值，没有的话就是一次点击
+         * @param velocityX 抬起时中心点的速度，像素/秒，取消的时候是0
+         * @param velocityY 抬起时中心点的速度，像素/秒
+         */
+        void onGestureEnd(boolean moved, float velocityX, float velocityY);
+
+        /**
+         * 第二次按下的时候回调，跟GestureDetector的onDoubleTap时机一样
+         */
+        void onDoubleTap(float x, float y);
+    }
+
+    /**
+     * 只需要部分回调的时候继承它
+     */
+    public static class SimpleListener implements Listener {
+        @Override
+        public void onPointerDown(int pointerId, float x, float y, long time) {
+        }
+
+        @Override
+        public void onPointerMove(int pointerId, float x, float y, long time) {
+        }
+
+        @Override
+        public void onPointerUp(int pointerId, long time) {
+        }
+
+        @Override
+        public void onTransform(float focusX, float focusY, float dx, float dy, float scale, float rotation) {
+        }
+
+        @Override
+        public void onGestureEnd(boolean moved, float velocityX, float velocityY) {
+        }
+
+        @Override
+        public void onDoubleTap(float x, float y) {
+        }
+    }
+
+    private final Listener listener;
+    private float touchSlop;
+    private float doubleTapSlop;
+
+    /**
+     * 每根手指的状态，下标是手指id
+     */
+    private boolean[] pointerDown = new boolean[10];
+    private float[] pointerXs = new float[10];
+    private float[] pointerYs = new float[10];
+
+    /**
+     * 按下的手指按按下顺序排列，旋转角度用最早按下的两根手指计算
+     */
+    private int[] activeIds = new int[10];
+    private int activeCount;
+
+    /**
+     * 上一次回调时的中心点、平均半径、角度
+     */
+    private float lastFocusX;
+    private float lastFocusY;
+    private float lastSpan;
+    private float lastAngle;
+
+    private float downFocusX;
+    private float downFocusY;
+    private boolean moved;
+
+    /**
+     * 中心点累计的平移，手指增减不会让它跳变，用来算速度
+     */
+    private float panX;
+    private float panY;
+    private final long[] sampleTimes = new long[VELOCITY_SAMPLES];
+    private final float[] sampleXs = new float[VELOCITY_SAMPLES];
+    private final float[] sampleYs = new float[VELOCITY_SAMPLES];
+    private int sampleCount;
+    private int sampleHead;
+
+    /**
+     * 双击检测：上一次点击抬起的时间和按下的位置
+     */
+    private long lastTapUpTime = -1;
+    private float lastTapX;
+    private float lastTapY;
+    private boolean secondTap;
+    private boolean multiTouch;
+
+    public GestureEngine(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 中心点移动、平均半径变化或者旋转的弧长超过这个距离之后才开始回调onTransform，默认0
+     */
+    public void setTouchSlop(float touchSlop) {
+        this.touchSlop = touchSlop;
+    }
+
+    /**
+     * 两次按下的距离在这个范围内才算双击，默认0表示不检测双击
+     */
+    public void setDoubleTapSlop(float doubleTapSlop) {
+        this.doubleTapSlop = doubleTapSlop;
+    }
+
+    /**
+     * 当前按下的手指数量
+     */
+    public int getPointerCount() {
+        return activeCount;
+    }
+
+    /**
+     * 按按下顺序的第index根手指的id
+     */
+    public int getPointerId(int index) {
+        return activeIds[index];
+    }
+
+    public float getX(int pointerId) {
+        return pointerXs[pointerId];
+    }
+
+    public float getY(int pointerId) {
+        return pointerYs[pointerId];
+    }
+
+    /**
+     * 当前所有按下手指的中心点，没有手指的时候是0
+     */
+    public float getFocusX() {
+        return focusX();
+    }
+
+    public float getFocusY() {
+        return focusY();
+    }
+
+    public boolean isMoved() {
+        return moved;
+    }
+
+    /**
+     * 处理一个事件
+     * @param action 动作，跟MotionEvent.getActionMasked一致
+     * @param actionIndex 按下或者抬起的手指在数组里的下标
+     * @param count 手指数量
+     * @param ids 每根手指的id
+     * @param xs 每根手指的坐标
+     * @param ys 每根手指的坐标
+     * @param time 事件时间，毫秒
+     */
+    public void onEvent(int action, int actionIndex, int count, int[] ids, float[] xs, float[] ys, long time) {
+        switch (action) {
+            case ACTION_DOWN:
+                reset();
+                updatePositions(count, ids, xs, ys);
+                pointerDown(ids[actionIndex], time);
+                downFocusX = lastFocusX;
+                downFocusY = lastFocusY;
+                checkDoubleTap(time);
+                break;
+            case ACTION_POINTER_DOWN:
+                updatePositions(count, ids, xs, ys);
+                pointerDown(ids[actionIndex], time);
+                multiTouch = true;
+                break;
+            case ACTION_MOVE:
+                updatePositions(count, ids, xs, ys);
+                for (int i = 0; i < count; i++) {
+                    if (pointerDown[ids[i]]) {
+                        listener.onPointerMove(ids[i], xs[i], ys[i], time);
+                    }
+                }
+                move(time);
+                break;
+            case ACTION_POINTER_UP:
+                updatePositions(count, ids, xs, ys);
+                pointerUp(ids[actionIndex], time);
+                break;
+            case ACTION_UP:
+                updatePositions(count, ids, xs, ys);
+                pointerUp(ids[actionIndex], time);
+                end(time, true);
+                break;
+            case ACTION_CANCEL:
+                while (activeCount > 0) {
+                    pointerUp(activeIds[activeCount - 1], time);
+                }
+                end(time, false);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void reset() {
+        while (activeCount > 0) {
+            pointerDown[activeIds[--activeCount]] = false;
+        }
+        moved = false;
+        multiTouch = false;
+        panX = 0;
+        panY = 0;
+        sampleCount = 0;
+    }
+
+    private void updatePositions(int count, int[] ids, float[] xs, float[] ys) {
+        for (int i = 0; i < count; i++) {
+            int id = ids[i];
+            ensurePointer(id);
+            pointerXs[id] = xs[i];
+            pointerYs[id] = ys[i];
+        }
+    }
+
+    private void pointerDown(int pointerId, long time) {
+        ensurePointer(pointerId);
+        if (!pointerDown[pointerId]) {
+            pointerDown[pointerId] = true;
+            activeIds[activeCount++] = pointerId;
+        }
+        listener.onPointerDown(pointerId, pointerXs[pointerId], pointerYs[pointerId], time);
+        rebase();
+        addSample(time);
+    }
+
+    private void pointerUp(int pointerId, long time) {
+        if (pointerId >= pointerDown.length || !pointerDown[pointerId]) {
+            return;
+        }
+        pointerDown[pointerId] = false;
+        for (int i = 0; i < activeCount; i++) {
+            if (activeIds[i] == pointerId) {
+                System.arraycopy(activeIds, i + 1, activeIds, i, activeCount - i - 1);
+                activeCount--;
+                break;
+            }
+        }
+        listener.onPointerUp(pointerId, time);
+        if (activeCount > 0) {
+            rebase();
+        }
+    }
+
+    /**
+     * 手指增减之后用剩下的手指重新计算基准
+     */
+    private void rebase() {
+        lastFocusX = focusX();
+        lastFocusY = focusY();
+        lastSpan = span(lastFocusX, lastFocusY);
+        lastAngle = angle();
+    }
+
+    private void move(long time) {
+        if (activeCount == 0) {
+            return;
+        }
+        float focusX = focusX();
+        float focusY = focusY();
+        float span = span(focusX, focusY);
+        float angle = angle();
+        if (!moved) {
+            // 没超过阈值之前基准一直是按下时的位置，开始之后第一次回调包含阈值以内的移动
+            // 旋转按手指在圆周上走过的弧长算，只拧不挪不捏的手势也能超过阈值
+            float fx = focusX - lastFocusX;
+            float fy = focusY - lastFocusY;
+            float arc = span * (float) Math.toRadians(Math.abs(normalizeDegrees(angle - lastAngle)));
+            if (fx * fx + fy * fy <= touchSlop * touchSlop && Math.abs(span - lastSpan) <= touchSlop
+                    && arc <= touchSlop) {
+                return;
+            }
+            moved = true;
+        }
+        float dx = focusX - lastFocusX;
+        float dy = focusY - lastFocusY;
+        float scale = activeCount > 1 && lastSpan > 0 && span > 0 ? span / lastSpan : 1;
+        float rotation = activeCount > 1 ? normalizeDegrees(angle - lastAngle) : 0;
+        lastFocusX = focusX;
+        lastFocusY = focusY;
+        lastSpan = span;
+        lastAngle = angle;
+        panX += dx;
+        panY += dy;
+        addSample(time);
+        listener.onTransform(focusX, focusY, dx, dy, scale, rotation);
+    }
+
+    private void end(long time, boolean up) {
+        float velocityX = 0;
+        float velocityY = 0;
+        if (up && moved) {
+            velocityX = velocity(sampleXs, time);
+            velocityY = velocity(sampleYs, time);
+        }
+        listener.onGestureEnd(moved, velocityX, velocityY);
+        // 单指、没有移动的一次点击，记下来给下一次按下判断双击
+        if (up && !moved && !multiTouch && !secondTap) {
+            lastTapUpTime = time;
+            lastTapX = downFocusX;
+            lastTapY = downFocusY;
+        } else {
+            lastTapUpTime = -1;
+        }
+        secondTap = false;
+    }
+
+    private void checkDoubleTap(long time) {
+        if (doubleTapSlop <= 0 || lastTapUpTime < 0) {
+            return;
+        }
+        long delta = time - lastTapUpTime;
+        float dx = downFocusX - lastTapX;
+        float dy = downFocusY - lastTapY;
+        if (delta >= DOUBLE_TAP_MIN_TIME && delta <= DOUBLE_TAP_TIMEOUT
+                && dx * dx + dy * dy <= doubleTapSlop * doubleTapSlop) {
+            secondTap = true;
+            lastTapUpTime = -1;
+            listener.onDoubleTap(downFocusX, downFocusY);
+        }
+    }
+
+    private float focusX() {
+        float sum = 0;
+        for (int i = 0; i < activeCount; i++) {
+            sum += pointerXs[activeIds[i]];
+        }
+        return activeCount == 0 ? 0 : sum / activeCount;
+    }
+
+    private float focusY() {
+        float sum = 0;
+        for (int i = 0; i < activeCount; i++) {
+            sum += pointerYs[activeIds[i]];
+        }
+        return activeCount == 0 ? 0 : sum / activeCount;
+    }
+
+    /**
+     * 手指到中心点的平均距离，跟ScaleGestureDetector的span一样反映手指张开的程度
+     */
+    private float span(float focusX, float focusY) {
+        if (activeCount < 2) {
+            return 0;
+        }
+        float sum = 0;
+        for (int i = 0; i < activeCount; i++) {
+            float dx = pointerXs[activeIds[i]] - focusX;
+            float dy = pointerYs[activeIds[i]] - focusY;
+            sum += (float) Math.sqrt(dx * dx + dy * dy);
+        }
+        return sum / activeCount;
+    }
+
+    /**
+     * 最早按下的两根手指连线的角度
+     */
+    private float angle() {
+        if (activeCount < 2) {
+            return 0;
+        }
+        int first = activeIds[0];
+        int second = activeIds[1];
+        return (float) Math.toDegrees(Math.atan2(pointerYs[second] - pointerYs[first],
+                pointerXs[second] - pointerXs[first]));
+    }
+
+    private static float normalizeDegrees(float degrees) {
+        if (degrees > 180) {
+            return degrees - 360;
+        }
+        if (degrees < -180) {
+            return degrees + 360;
+        }
+        return degrees;
+    }
+
+    private void addSample(long time) {
+        sampleHead = (sampleHead + 1) % VELOCITY_SAMPLES;
+        sampleTimes[sampleHead] = time;
+        sampleXs[sampleHead] = panX;
+        sampleYs[sampleHead] = panY;
+        sampleCount = Math.min(sampleCount + 1, VELOCITY_SAMPLES);
+    }
+
+    /**
+     * 最近一段时间内累计平移的最小二乘斜率
+     */
+    private float velocity(float[] values, long now) {
+        if (sampleCount < 2 || now - sampleTimes[sampleHead] > ASSUME_STOPPED_MILLIS) {
+            return 0;
+        }
+        int used = 0;
+        float meanT = 0;
+        float meanV = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            int index = (sampleHead - i + VELOCITY_SAMPLES) % VELOCITY_SAMPLES;
+            long age = sampleTimes[sampleHead] - sampleTimes[index];
+            if (age > VELOCITY_HORIZON) {
+                break;
+            }
+            meanT -= age;
+            meanV += values[index];
+            used++;
+        }
+        if (used < 2) {
+            return 0;
+        }
+        meanT /= used;
+        meanV /= used;
+        float numerator = 0;
+        float denominator = 0;
+        for (int i = 0; i < used; i++) {
+            int index = (sampleHead - i + VELOCITY_SAMPLES) % VELOCITY_SAMPLES;
+            float t = -(sampleTimes[sampleHead] - sampleTimes[index]) - meanT;
+            numerator += t * (values[index] - meanV);
+            denominator += t * t;
+        }
+        return denominator == 0 ? 0 : numerator / denominator * 1000;
+    }
+
+    private void ensurePointer(int pointerId) {
+        if (pointerId >= pointerDown.length) {
+            int size = pointerId + 1;
+            boolean[] down = new boolean[size];
+            float[] xs = new float[size];
+            float[] ys = new float[size];
+            int[] active = new int[size];
+            System.arraycopy(pointerDown, 0, down, 0, pointerDown.length);
+            System.arraycopy(pointerXs, 0, xs, 0, pointerXs.length);
+            System.arraycopy(pointerYs, 0, ys, 0, pointerYs.length);
+            System.arraycopy(activeIds, 0, active, 0, activeIds.length);
+            pointerDown = down;
+            pointerXs = xs;
+            pointerYs = ys;
+            activeIds = active;
+        }
+    }
+}
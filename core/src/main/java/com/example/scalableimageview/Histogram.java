@@ -0,0 +1,92 @@
+package com.example.scalableimageview;
+
+/**
+ * 固定分桶的耗时直方图，单位是微秒
+ * 记录的时候不分配对象，可以在绘制和触摸回调里使用
+ */
+public class Histogram {
+
+    /**
+     * 每个桶的上界（微秒），最后一个桶收集所有更大的值
+     */
+    private static final long[] BUCKET_BOUNDS = {
+            50, 100, 250, 500, 1000, 2000, 4000, 8000, 12000, 16000, 24000, 33000, 66000, 100000, 250000
+    };
+
+    private final long[] counts = new long[BUCKET_BOUNDS.length + 1];
+    private long count;
+    private long totalMicros;
+    private long maxMicros;
+
+    public synchronized void record(long micros) {
+        int index = 0;
+        while (index < BUCKET_BOUNDS.length && micros > BUCKET_BOUNDS[index]) {
+            index++;
+        }
+        counts[index]++;
+        count++;
+        totalMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized float getAverageMillis() {
+        return count == 0 ? 0 : totalMicros / 1000f / count;
+    }
+
+    public synchronized float getMaxMillis() {
+        return maxMicros / 1000f;
+    }
+
+    /**
+     * 百分位数的近似值，返回所在桶的上界
+     * @param percentile 0到100
+     */
+    public synchronized float getPercentileMillis(float percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100f);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return (i < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[i] : maxMicros) / 1000f;
+            }
+        }
+        return maxMicros / 1000f;
+    }
+
+    /**
+     * 各个桶的计数，下标对应{@link #getBucketBoundMicros}
+     */
+    public synchronized long[] getBucketCounts() {
+        return counts.clone();
+    }
+
+    public static long getBucketBoundMicros(int index) {
+        return index < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[index] : Long.MAX_VALUE;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        totalMicros = 0;
+        maxMicros = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "count=" + count
+                + ", avg=" + getAverageMillis() + "ms"
+                + ", p50=" + getPercentileMillis(50) + "ms"
+                + ", p90=" + getPercentileMillis(90) + "ms"
+                + ", p99=" + getPercentileMillis(99) + "ms"
+                + ", max=" + getMaxMillis() + "ms";
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.scalableimageview;
+
+/**
+ * 触摸点预测
+ * 根据最近几个采样点的速度，外推手指在一小段时间之后的位置
+ * 画笔迹的时候在真实笔迹末尾接上预测的一小段，抵消从触摸到屏幕显示的延迟
+ * 速度做了平滑，避免单个抖动的采样点让预测乱跳
+ */
+public final class PointPredictor {
+
+    /**
+     * 新速度的权重，越大越跟手，越小越平稳
+     */
+    private static final float SMOOTHING = 0.6f;
+
+    /**
+     * 两个采样点间隔太久，说明手指停过，之前的速度不再可信
+     */
+    private static final long MAX_SAMPLE_INTERVAL_MILLIS = 40;
+
+    private float lastX;
+    private float lastY;
+    private long lastTime;
+    private float velocityX;
+    private float velocityY;
+    private int sampleCount;
+
+    /**
+     * 手指落下的时候调用，清掉上一次的速度
+     */
+    public void reset(float x, float y, long timeMillis) {
+        lastX = x;
+        lastY = y;
+        lastTime = timeMillis;
+        velocityX = 0;
+        velocityY = 0;
+        sampleCount = 1;
+    }
+
+    /**
+     * 按时间顺序加入采样点，包括MotionEvent里的历史采样点
+     */
+    public void add(float x, float y, long timeMillis) {
+        if (sampleCount == 0) {
+            reset(x, y, timeMillis);
+            return;
+        }
+        long dt = timeMillis - lastTime;
+        if (dt <= 0) {
+            // 同一时刻的采样点，只更新位置
+            lastX = x;
+            lastY = y;
+            return;
+        }
+        float vx = (x - lastX) / dt;
+        float vy = (y - lastY) / dt;
+        if (sampleCount == 1 || dt > MAX_SAMPLE_INTERVAL_MILLIS) {
+            velocityX = vx;
+            velocityY = vy;
+        } else {
+            velocityX += (vx - velocityX) * SMOOTHING;
+            velocityY += (vy - velocityY) * SMOOTHING;
+        }
+        lastX = x;
+        lastY = y;
+        lastTime = timeMillis;
+        sampleCount++;
+    }
+
+    public float getLastX() {
+        return lastX;
+    }
+
+    public float getLastY() {
+        return lastY;
+    }
+
+    /**
+     * 预测一段时间之后的位置
+     * @param aheadMillis 往后预测的时间，一般是一帧的时长
+     * @param maxDistance 预测点离最后一个真实点的最大距离，速度很快的时候也不会甩出去太远
+     * @param out 预测点的坐标，out[0]是x，out[1]是y
+     * @return 采样点不够两个时无法预测，返回false
+     */
+    public boolean predict(long aheadMillis, float maxDistance, float[] out) {
+        if (sampleCount < 2) {
+            return false;
+        }
+        float dx = velocityX * aheadMillis;
+        float dy = velocityY * aheadMillis;
+        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+        if (distance > maxDistance) {
+            float ratio = maxDistance / distance;
+            dx *= ratio;
+            dy *= ratio;
+        }
+        out[0] = lastX + dx;
+        out[1] = lastY + dy;
+        return true;
+    }
+}
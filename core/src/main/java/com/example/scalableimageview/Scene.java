@@ -0,0 +1,214 @@
+package com.example.scalableimageview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * 拼贴画布：很多张图，每张有自己的位置、放缩和旋转，按z顺序叠在一起
+ * - 变换之后的外接矩形放在{@link SpatialIndex}里，点击的时候先用索引找候选，再按旋转之后的形状精确判断，取最上面的一张
+ * - 每次修改把这张图修改前后的外接矩形合并到脏区域，View只重绘这一块
+ *
+ * 不依赖Android，绘制交给View，在JVM上可以跑基准
+ */
+public final class Scene {
+
+    private static final float MIN_SCALE = 0.1f;
+    private static final float MAX_SCALE = 10f;
+
+    /**
+     * 按z顺序，最下面的在前
+     */
+    private final ArrayList<SceneItem> items = new ArrayList<>();
+
+    /**
+     * 下标是id，删掉的是null
+     */
+    private SceneItem[] byId = new SceneItem[16];
+    private int nextId;
+    private int nextZ;
+
+    private final SpatialIndex index = new SpatialIndex();
+    private final HitVisitor hitVisitor = new HitVisitor();
+
+    private final float[] dirty = new float[4];
+    private boolean hasDirty;
+
+    /**
+     * 加一张图放在最上面
+     * @param width 放缩之前的宽度
+     * @param height 放缩之前的高度
+     * @param rotation 顺时针旋转的角度
+     */
+    public SceneItem add(float width, float height, float centerX, float centerY, float scale, float rotation) {
+        SceneItem item = new SceneItem(nextId++);
+        item.width = width;
+        item.height = height;
+        item.centerX = centerX;
+        item.centerY = centerY;
+        item.scale = ZoomMath.clamp(scale, MIN_SCALE, MAX_SCALE);
+        item.rotation = rotation;
+        item.z = nextZ++;
+        item.updateBounds();
+        if (item.id == byId.length) {
+            byId = Arrays.copyOf(byId, byId.length * 2);
+        }
+        byId[item.id] = item;
+        items.add(item);
+        addToIndex(item);
+        markDirty(item);
+        return item;
+    }
+
+    public void remove(SceneItem item) {
+        if (findItem(item.id) != item) {
+            return;
+        }
+        markDirty(item);
+        removeFromIndex(item);
+        items.remove(item);
+        byId[item.id] = null;
+    }
+
+    public void clear() {
+        for (int i = 0; i < items.size(); i++) {
+            markDirty(items.get(i));
+        }
+        items.clear();
+        Arrays.fill(byId, null);
+        index.clear();
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    /**
+     * 按z顺序取，0是最下面的
+     */
+    public SceneItem getItem(int position) {
+        return items.get(position);
+    }
+
+    public SceneItem findItem(int id) {
+        return id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
+    /**
+     * 点下面最上面的一张图
+     * @return 没有的话返回null
+     */
+    public SceneItem hitTest(float x, float y) {
+        hitVisitor.x = x;
+        hitVisitor.y = y;
+        hitVisitor.found = null;
+        index.searchPoint(x, y, hitVisitor);
+        SceneItem found = hitVisitor.found;
+        hitVisitor.found = null;
+        return found;
+    }
+
+    /**
+     * 移到最上面
+     */
+    public void bringToFront(SceneItem item) {
+        if (items.isEmpty() || items.get(items.size() - 1) == item) {
+            return;
+        }
+        items.remove(item);
+        items.add(item);
+        item.z = nextZ++;
+        markDirty(item);
+    }
+
+    /**
+     * 图片解码出来之后换成实际的尺寸，中心不变
+     */
+    public void setSize(SceneItem item, float width, float height) {
+        markDirty(item);
+        removeFromIndex(item);
+        item.width = width;
+        item.height = height;
+        item.updateBounds();
+        addToIndex(item);
+        markDirty(item);
+    }
+
+    /**
+     * 手势带来的一次变化：以中心点为轴放缩、旋转，再平移
+     * @param focusX 放缩和旋转的中心
+     * @param focusY 放缩和旋转的中心
+     * @param scale 放缩倍数，结果限制在放缩范围内
+     * @param rotation 顺时针旋转的角度
+     */
+    public void transform(SceneItem item, float focusX, float focusY, float dx, float dy, float scale, float rotation) {
+        markDirty(item);
+        removeFromIndex(item);
+        float newScale = ZoomMath.clamp(item.scale * scale, MIN_SCALE, MAX_SCALE);
+        scale = newScale / item.scale;
+        // 图片中心绕着手势中心放缩、旋转
+        double radians = Math.toRadians(rotation);
+        float cos = (float) Math.cos(radians) * scale;
+        float sin = (float) Math.sin(radians) * scale;
+        float x = item.centerX - focusX;
+        float y = item.centerY - focusY;
+        item.centerX = focusX + x * cos - y * sin + dx;
+        item.centerY = focusY + x * sin + y * cos + dy;
+        item.scale = newScale;
+        item.rotation = ZoomMath.normalizeDegrees(item.rotation + rotation);
+        item.updateBounds();
+        addToIndex(item);
+        markDirty(item);
+    }
+
+    /**
+     * 取出上次之后所有修改影响到的范围，并清空
+     * @param out left, top, right, bottom
+     * @return 没有修改的时候返回false
+     */
+    public boolean takeDirty(float[] out) {
+        if (!hasDirty) {
+            return false;
+        }
+        System.arraycopy(dirty, 0, out, 0, 4);
+        hasDirty = false;
+        return true;
+    }
+
+    private void addToIndex(SceneItem item) {
+        index.insert(item.id, item.bounds[0], item.bounds[1], item.bounds[2], item.bounds[3]);
+    }
+
+    private void removeFromIndex(SceneItem item) {
+        index.remove(item.id, item.bounds[0], item.bounds[1], item.bounds[2], item.bounds[3]);
+    }
+
+    private void markDirty(SceneItem item) {
+        float[] bounds = item.bounds;
+        if (!hasDirty) {
+            System.arraycopy(bounds, 0, dirty, 0, 4);
+            hasDirty = true;
+            return;
+        }
+        dirty[0] = Math.min(dirty[0], bounds[0]);
+        dirty[1] = Math.min(dirty[1], bounds[1]);
+        dirty[2] = Math.max(dirty[2], bounds[2]);
+        dirty[3] = Math.max(dirty[3], bounds[3]);
+    }
+
+    /**
+     * 索引只按外接矩形筛选，这里按旋转之后的形状再判断一次，留下z最大的
+     */
+    private class HitVisitor implements SpatialIndex.Visitor {
+        float x;
+        float y;
+        SceneItem found;
+
+        @Override
+        public void visit(int id) {
+            SceneItem item = byId[id];
+            if ((found == null || item.z > found.z) && item.contains(x, y)) {
+                found = item;
+            }
+        }
+    }
+}
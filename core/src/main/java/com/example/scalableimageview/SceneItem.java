@@ -0,0 +1,103 @@
+package com.example.scalableimageview;
+
+/**
+ * 拼贴画布上的一张图
+ * 图片以自己的中心为轴先放缩再旋转，然后把中心放到(centerX, centerY)
+ * 只能通过{@link Scene}修改，修改的时候Scene同时更新索引和脏区域
+ */
+public final class SceneItem {
+
+    final int id;
+    float width;
+    float height;
+    float centerX;
+    float centerY;
+    float scale = 1;
+
+    /**
+     * 顺时针旋转的角度
+     */
+    float rotation;
+
+    /**
+     * 越大越靠上
+     */
+    int z;
+
+    /**
+     * 变换之后的外接矩形，也是在索引里的范围
+     */
+    final float[] bounds = new float[4];
+
+    SceneItem(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public float getCenterX() {
+        return centerX;
+    }
+
+    public float getCenterY() {
+        return centerY;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public float getRotation() {
+        return rotation;
+    }
+
+    /**
+     * @param out 变换之后的外接矩形 left, top, right, bottom
+     */
+    public void getBounds(float[] out) {
+        System.arraycopy(bounds, 0, out, 0, 4);
+    }
+
+    public boolean intersects(float left, float top, float right, float bottom) {
+        return bounds[0] <= right && bounds[2] >= left && bounds[1] <= bottom && bounds[3] >= top;
+    }
+
+    /**
+     * 点是否落在旋转之后的图片上，不只是外接矩形
+     */
+    public boolean contains(float x, float y) {
+        // 转回图片自己的方向
+        double radians = Math.toRadians(-rotation);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float dx = x - centerX;
+        float dy = y - centerY;
+        float localX = dx * cos - dy * sin;
+        float localY = dx * sin + dy * cos;
+        return Math.abs(localX) <= width * scale / 2 && Math.abs(localY) <= height * scale / 2;
+    }
+
+    void updateBounds() {
+        double radians = Math.toRadians(rotation);
+        float cos = Math.abs((float) Math.cos(radians));
+        float sin = Math.abs((float) Math.sin(radians));
+        float halfWidth = width * scale / 2;
+        float halfHeight = height * scale / 2;
+        float extentX = halfWidth * cos + halfHeight * sin;
+        float extentY = halfWidth * sin + halfHeight * cos;
+        bounds[0] = centerX - extentX;
+        bounds[1] = centerY - extentY;
+        bounds[2] = centerX + extentX;
+        bounds[3] = centerY + extentY;
+    }
+}
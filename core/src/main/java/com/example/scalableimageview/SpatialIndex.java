@@ -0,0 +1,397 @@
+package com.example.scalableimageview;
+
+/**
+ * 按外接矩形查找的空间索引（R树）
+ * 每一项是一个整数id和它的外接矩形，查询的时候只进入和查询范围相交的节点，
+ * 数据分布不太极端的时候一次查询是对数时间，跟总数关系不大
+ *
+ * 插入的时候选范围扩大最少的子节点，节点满了按二次分裂拆成两个
+ * 删除的时候不合并节点，只去掉空节点并收紧范围
+ * 矩形按 left, top, right, bottom 存放在float数组里，插入和查询不分配对象
+ */
+public final class SpatialIndex {
+
+    /**
+     * 查询结果逐个回调
+     */
+    public interface Visitor {
+        void visit(int id);
+    }
+
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = 6;
+
+    private static final class Node {
+        final boolean leaf;
+        Node parent;
+        int count;
+
+        /**
+         * 每一项的范围，多留一项的位置，满了之后先放进去再分裂
+         */
+        final float[] bounds = new float[(MAX_ENTRIES + 1) * 4];
+        final int[] ids;
+        final Node[] children;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+            ids = leaf ? new int[MAX_ENTRIES + 1] : null;
+            children = leaf ? null : new Node[MAX_ENTRIES + 1];
+        }
+    }
+
+    private Node root = new Node(true);
+    private int size;
+
+    /**
+     * 分裂时用的临时空间
+     */
+    private final float[] splitBounds = new float[(MAX_ENTRIES + 1) * 4];
+    private final int[] splitIds = new int[MAX_ENTRIES + 1];
+    private final Node[] splitChildren = new Node[MAX_ENTRIES + 1];
+    private final boolean[] assigned = new boolean[MAX_ENTRIES + 1];
+    private final float[] groupBounds = new float[8];
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        root = new Node(true);
+        size = 0;
+    }
+
+    public void insert(int id, float left, float top, float right, float bottom) {
+        Node leaf = chooseLeaf(left, top, right, bottom);
+        leaf.ids[leaf.count] = id;
+        setEntry(leaf.bounds, leaf.count, left, top, right, bottom);
+        leaf.count++;
+        size++;
+        adjust(leaf);
+    }
+
+    /**
+     * @param left 插入时的范围，用来找到它所在的叶子
+     * @return 没有找到的时候返回false
+     */
+    public boolean remove(int id, float left, float top, float right, float bottom) {
+        Node leaf = findLeaf(root, id, left, top, right, bottom);
+        if (leaf == null) {
+            return false;
+        }
+        int index = 0;
+        while (leaf.ids[index] != id || !contains(leaf.bounds, index, left, top, right, bottom)) {
+            index++;
+        }
+        leaf.count--;
+        leaf.ids[index] = leaf.ids[leaf.count];
+        System.arraycopy(leaf.bounds, leaf.count * 4, leaf.bounds, index * 4, 4);
+        size--;
+        condense(leaf);
+        return true;
+    }
+
+    /**
+     * 所有和矩形相交的项，边界相接也算
+     * @return 回调的次数
+     */
+    public int search(float left, float top, float right, float bottom, Visitor visitor) {
+        return search(root, left, top, right, bottom, visitor);
+    }
+
+    /**
+     * 所有范围包含这个点的项
+     */
+    public int searchPoint(float x, float y, Visitor visitor) {
+        return search(root, x, y, x, y, visitor);
+    }
+
+    private int search(Node node, float left, float top, float right, float bottom, Visitor visitor) {
+        int found = 0;
+        float[] bounds = node.bounds;
+        for (int i = 0; i < node.count; i++) {
+            int b = i * 4;
+            if (bounds[b] > right || bounds[b + 2] < left || bounds[b + 1] > bottom || bounds[b + 3] < top) {
+                continue;
+            }
+            if (node.leaf) {
+                visitor.visit(node.ids[i]);
+                found++;
+            } else {
+                found += search(node.children[i], left, top, right, bottom, visitor);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 从根往下，每一层选放进去之后范围扩大最少的子节点，一样的话选面积小的
+     */
+    private Node chooseLeaf(float left, float top, float right, float bottom) {
+        Node node = root;
+        while (!node.leaf) {
+            int best = 0;
+            float bestEnlargement = Float.MAX_VALUE;
+            float bestArea = Float.MAX_VALUE;
+            for (int i = 0; i < node.count; i++) {
+                float area = area(node.bounds, i);
+                float enlargement = unionArea(node.bounds, i, left, top, right, bottom) - area;
+                if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                    best = i;
+                    bestEnlargement = enlargement;
+                    bestArea = area;
+                }
+            }
+            node = node.children[best];
+        }
+        return node;
+    }
+
+    /**
+     * 从插入的叶子往上更新父节点里记录的范围，超出容量的节点分裂，根分裂之后树长高一层
+     */
+    private void adjust(Node node) {
+        while (true) {
+            Node sibling = node.count > MAX_ENTRIES ? split(node) : null;
+            Node parent = node.parent;
+            if (parent == null) {
+                if (sibling != null) {
+                    root = new Node(false);
+                    addChild(root, node);
+                    addChild(root, sibling);
+                }
+                return;
+            }
+            updateChildBounds(parent, node);
+            if (sibling != null) {
+                addChild(parent, sibling);
+            }
+            node = parent;
+        }
+    }
+
+    /**
+     * 删除之后往上收紧范围，空节点从父节点里去掉，根只剩一个子节点的时候树变矮
+     */
+    private void condense(Node node) {
+        while (node.parent != null) {
+            Node parent = node.parent;
+            int index = indexOf(parent, node);
+            if (node.count == 0) {
+                parent.count--;
+                parent.children[index] = parent.children[parent.count];
+                parent.children[parent.count] = null;
+                System.arraycopy(parent.bounds, parent.count * 4, parent.bounds, index * 4, 4);
+            } else {
+                computeBounds(node, parent.bounds, index);
+            }
+            node = parent;
+        }
+        while (!root.leaf && root.count == 1) {
+            root = root.children[0];
+            root.parent = null;
+        }
+        if (!root.leaf && root.count == 0) {
+            root = new Node(true);
+        }
+    }
+
+    private Node findLeaf(Node node, int id, float left, float top, float right, float bottom) {
+        for (int i = 0; i < node.count; i++) {
+            if (!contains(node.bounds, i, left, top, right, bottom)) {
+                continue;
+            }
+            if (node.leaf) {
+                if (node.ids[i] == id) {
+                    return node;
+                }
+            } else {
+                Node leaf = findLeaf(node.children[i], id, left, top, right, bottom);
+                if (leaf != null) {
+                    return leaf;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 二次分裂：先挑放在一起最浪费面积的两项分开作为种子，
+     * 剩下的每次挑对两边偏好差别最大的一项，放到范围扩大少的一边，保证两边都不少于MIN_ENTRIES
+     * @return 新的兄弟节点，还没有加到父节点里
+     */
+    private Node split(Node node) {
+        int total = node.count;
+        System.arraycopy(node.bounds, 0, splitBounds, 0, total * 4);
+        if (node.leaf) {
+            System.arraycopy(node.ids, 0, splitIds, 0, total);
+        } else {
+            System.arraycopy(node.children, 0, splitChildren, 0, total);
+        }
+        for (int i = 0; i < total; i++) {
+            assigned[i] = false;
+        }
+
+        int seed1 = 0;
+        int seed2 = 1;
+        float worst = -Float.MAX_VALUE;
+        for (int i = 0; i < total; i++) {
+            for (int j = i + 1; j < total; j++) {
+                float waste = unionArea(splitBounds, i, splitBounds[j * 4], splitBounds[j * 4 + 1],
+                        splitBounds[j * 4 + 2], splitBounds[j * 4 + 3]) - area(splitBounds, i) - area(splitBounds, j);
+                if (waste > worst) {
+                    worst = waste;
+                    seed1 = i;
+                    seed2 = j;
+                }
+            }
+        }
+
+        Node sibling = new Node(node.leaf);
+        node.count = 0;
+        moveEntry(seed1, node, 0);
+        moveEntry(seed2, sibling, 1);
+        int remaining = total - 2;
+        while (remaining > 0) {
+            // 一边的项太少，剩下的全部给它
+            if (node.count + remaining == MIN_ENTRIES || sibling.count + remaining == MIN_ENTRIES) {
+                Node target = node.count + remaining == MIN_ENTRIES ? node : sibling;
+                int group = target == node ? 0 : 1;
+                for (int i = 0; i < total; i++) {
+                    if (!assigned[i]) {
+                        moveEntry(i, target, group);
+                    }
+                }
+                break;
+            }
+            int next = -1;
+            float nextDifference = -1;
+            float nextGrowth1 = 0;
+            float nextGrowth2 = 0;
+            for (int i = 0; i < total; i++) {
+                if (assigned[i]) {
+                    continue;
+                }
+                int b = i * 4;
+                float growth1 = unionArea(groupBounds, 0, splitBounds[b], splitBounds[b + 1],
+                        splitBounds[b + 2], splitBounds[b + 3]) - area(groupBounds, 0);
+                float growth2 = unionArea(groupBounds, 1, splitBounds[b], splitBounds[b + 1],
+                        splitBounds[b + 2], splitBounds[b + 3]) - area(groupBounds, 1);
+                float difference = Math.abs(growth1 - growth2);
+                if (difference > nextDifference) {
+                    next = i;
+                    nextDifference = difference;
+                    nextGrowth1 = growth1;
+                    nextGrowth2 = growth2;
+                }
+            }
+            boolean first;
+            if (nextGrowth1 != nextGrowth2) {
+                first = nextGrowth1 < nextGrowth2;
+            } else if (area(groupBounds, 0) != area(groupBounds, 1)) {
+                first = area(groupBounds, 0) < area(groupBounds, 1);
+            } else {
+                first = node.count <= sibling.count;
+            }
+            moveEntry(next, first ? node : sibling, first ? 0 : 1);
+            remaining--;
+        }
+        // 临时数组里不留节点的引用
+        for (int i = 0; i < total; i++) {
+            splitChildren[i] = null;
+        }
+        return sibling;
+    }
+
+    /**
+     * 把分裂前的第index项放进target，同时扩大这一组的范围
+     */
+    private void moveEntry(int index, Node target, int group) {
+        int b = index * 4;
+        float left = splitBounds[b];
+        float top = splitBounds[b + 1];
+        float right = splitBounds[b + 2];
+        float bottom = splitBounds[b + 3];
+        int slot = target.count;
+        setEntry(target.bounds, slot, left, top, right, bottom);
+        if (target.leaf) {
+            target.ids[slot] = splitIds[index];
+        } else {
+            target.children[slot] = splitChildren[index];
+            splitChildren[index].parent = target;
+        }
+        target.count++;
+        assigned[index] = true;
+        if (slot == 0) {
+            setEntry(groupBounds, group, left, top, right, bottom);
+        } else {
+            int g = group * 4;
+            groupBounds[g] = Math.min(groupBounds[g], left);
+            groupBounds[g + 1] = Math.min(groupBounds[g + 1], top);
+            groupBounds[g + 2] = Math.max(groupBounds[g + 2], right);
+            groupBounds[g + 3] = Math.max(groupBounds[g + 3], bottom);
+        }
+    }
+
+    private void addChild(Node parent, Node child) {
+        parent.children[parent.count] = child;
+        child.parent = parent;
+        computeBounds(child, parent.bounds, parent.count);
+        parent.count++;
+    }
+
+    private void updateChildBounds(Node parent, Node child) {
+        computeBounds(child, parent.bounds, indexOf(parent, child));
+    }
+
+    private static int indexOf(Node parent, Node child) {
+        int index = 0;
+        while (parent.children[index] != child) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * node里所有项的范围合起来，写到out的第index项
+     */
+    private static void computeBounds(Node node, float[] out, int index) {
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        float[] bounds = node.bounds;
+        for (int i = 0; i < node.count; i++) {
+            int b = i * 4;
+            left = Math.min(left, bounds[b]);
+            top = Math.min(top, bounds[b + 1]);
+            right = Math.max(right, bounds[b + 2]);
+            bottom = Math.max(bottom, bounds[b + 3]);
+        }
+        setEntry(out, index, left, top, right, bottom);
+    }
+
+    private static void setEntry(float[] bounds, int index, float left, float top, float right, float bottom) {
+        int b = index * 4;
+        bounds[b] = left;
+        bounds[b + 1] = top;
+        bounds[b + 2] = right;
+        bounds[b + 3] = bottom;
+    }
+
+    private static boolean contains(float[] bounds, int index, float left, float top, float right, float bottom) {
+        int b = index * 4;
+        return bounds[b] <= left && bounds[b + 1] <= top && bounds[b + 2] >= right && bounds[b + 3] >= bottom;
+    }
+
+    private static float area(float[] bounds, int index) {
+        int b = index * 4;
+        return (bounds[b + 2] - bounds[b]) * (bounds[b + 3] - bounds[b + 1]);
+    }
+
+    private static float unionArea(float[] bounds, int index, float left, float top, float right, float bottom) {
+        int b = index * 4;
+        return (Math.max(bounds[b + 2], right) - Math.min(bounds[b], left))
+                * (Math.max(bounds[b + 3], bottom) - Math.min(bounds[b + 1], top));
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.scalableimageview;
+
+/**
+ * 一条笔迹
+ * 触摸采样点存放在可扩容的float数组里，不为每个点创建对象
+ * 加入采样点的时候就地化简：离上一个固定点太近的点、去掉之后误差很小的点都不保留
+ * 输出的时候用二次曲线经过相邻点的中点连接，折线变成平滑的曲线
+ *
+ * 最后一个点是浮动的，后面的采样点可能会移动它，其它点一旦确定就不再变化
+ * 所以曲线的前面一部分是稳定的，可以提前栅格化，只有末尾几段需要每帧重新生成
+ */
+public final class Stroke {
+
+    /**
+     * 曲线的输出目标，Android的Path已经有同样签名的方法
+     */
+    public interface PathSink {
+        void moveTo(float x, float y);
+
+        void lineTo(float x, float y);
+
+        void quadTo(float x1, float y1, float x2, float y2);
+    }
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private final float minDistance;
+    private final float distanceTolerance;
+    private final float angleToleranceCos;
+
+    /**
+     * x, y交替存放
+     */
+    private float[] points = new float[INITIAL_CAPACITY * 2];
+    private int count;
+    private int sampleCount;
+
+    /**
+     * @param minDistance 离上一个固定点小于这个距离的采样点只更新末端，不新增点
+     * @param distanceTolerance 去掉中间点之后，它离新线段的距离不能超过这个值
+     * @param angleTolerance 去掉中间点之后，线段方向的变化不能超过这个角度，单位度
+     */
+    public Stroke(float minDistance, float distanceTolerance, float angleTolerance) {
+        this.minDistance = minDistance;
+        this.distanceTolerance = distanceTolerance;
+        this.angleToleranceCos = (float) Math.cos(Math.toRadians(angleTolerance));
+    }
+
+    /**
+     * 清空之后可以重新使用，数组不释放
+     */
+    public void reset() {
+        count = 0;
+        sampleCount = 0;
+    }
+
+    /**
+     * 加入一个采样点
+     */
+    public void add(float x, float y) {
+        sampleCount++;
+        if (count == 0) {
+            append(x, y);
+            return;
+        }
+        int last = (count - 1) * 2;
+        if (count == 1) {
+            // 起点固定不动
+            float dx = x - points[0];
+            float dy = y - points[1];
+            if (dx * dx + dy * dy >= minDistance * minDistance) {
+                append(x, y);
+            }
+            return;
+        }
+        // 倒数第二个点已经固定，最后一个点是浮动的
+        float anchorX = points[last - 2];
+        float anchorY = points[last - 1];
+        float dx = x - anchorX;
+        float dy = y - anchorY;
+        if (dx * dx + dy * dy < minDistance * minDistance
+                || isRedundant(anchorX, anchorY, points[last], points[last + 1], x, y)) {
+            // 末端跟着手指走，不新增点
+            points[last] = x;
+            points[last + 1] = y;
+        } else {
+            // 原来的末端固定下来，新的采样点成为末端
+            append(x, y);
+        }
+    }
+
+    /**
+     * 中间点(bx, by)去掉之后，a到c的线段能不能代替a到b到c
+     * 方向都从固定的a点算起，相邻采样点之间的手抖不会被当成拐弯
+     */
+    private boolean isRedundant(float ax, float ay, float bx, float by, float cx, float cy) {
+        float abx = bx - ax;
+        float aby = by - ay;
+        float acx = cx - ax;
+        float acy = cy - ay;
+        float abLength = (float) Math.sqrt(abx * abx + aby * aby);
+        float acLength = (float) Math.sqrt(acx * acx + acy * acy);
+        if (abLength == 0) {
+            return true;
+        }
+        float cos = (abx * acx + aby * acy) / (abLength * acLength);
+        if (cos < angleToleranceCos) {
+            return false;
+        }
+        // b到直线ac的距离
+        float distance = Math.abs(acx * aby - acy * abx) / acLength;
+        return distance <= distanceTolerance;
+    }
+
+    private void append(float x, float y) {
+        if (count * 2 == points.length) {
+            float[] grown = new float[points.length * 2];
+            System.arraycopy(points, 0, grown, 0, points.length);
+            points = grown;
+        }
+        points[count * 2] = x;
+        points[count * 2 + 1] = y;
+        count++;
+    }
+
+    /**
+     * 化简之后保留的点数
+     */
+    public int getPointCount() {
+        return count;
+    }
+
+    /**
+     * 加入过的采样点总数
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public float getX(int index) {
+        return points[index * 2];
+    }
+
+    public float getY(int index) {
+        return points[index * 2 + 1];
+    }
+
+    public float getLastX() {
+        return points[(count - 1) * 2];
+    }
+
+    public float getLastY() {
+        return points[(count - 1) * 2 + 1];
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * 所有点的外接矩形，曲线的控制点就是这些点，所以整条曲线都在里面
+     * @param out left, top, right, bottom
+     */
+    public void getBounds(float[] out) {
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < count * 2; i += 2) {
+            left = Math.min(left, points[i]);
+            top = Math.min(top, points[i + 1]);
+            right = Math.max(right, points[i]);
+            bottom = Math.max(bottom, points[i + 1]);
+        }
+        out[0] = left;
+        out[1] = top;
+        out[2] = right;
+        out[3] = bottom;
+    }
+
+    /**
+     * 某个点到笔迹的距离，曲线按经过所有点的折线近似
+     */
+    public float distanceTo(float x, float y) {
+        if (count == 0) {
+            return Float.MAX_VALUE;
+        }
+        float min = Float.MAX_VALUE;
+        float ax = points[0];
+        float ay = points[1];
+        if (count == 1) {
+            return (float) Math.hypot(x - ax, y - ay);
+        }
+        for (int i = 2; i < count * 2; i += 2) {
+            float bx = points[i];
+            float by = points[i + 1];
+            float abx = bx - ax;
+            float aby = by - ay;
+            float lengthSquared = abx * abx + aby * aby;
+            float t = lengthSquared == 0 ? 0 : ((x - ax) * abx + (y - ay) * aby) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+            float dx = x - (ax + abx * t);
+            float dy = y - (ay + aby * t);
+            min = Math.min(min, dx * dx + dy * dy);
+            ax = bx;
+            ay = by;
+        }
+        return (float) Math.sqrt(min);
+    }
+
+    /**
+     * 曲线一共有多少段
+     * 第0段是起点到第一个中点的直线，第i段是两个中点之间以第i个点为控制点的二次曲线，最后一段直线连到末端
+     */
+    public int getPieceCount() {
+        return count;
+    }
+
+    /**
+     * 不会再变化的段数，这些段可以提前栅格化
+     * 第i段用到第i-1、i、i+1个点，只有最后一个点是浮动的
+     */
+    public int getStablePieceCount() {
+        return Math.max(0, count - 2);
+    }
+
+    /**
+     * 输出整条曲线
+     */
+    public void build(PathSink sink) {
+        build(sink, 0, getPieceCount());
+    }
+
+    /**
+     * 输出[from, to)这几段，从第from段的起点moveTo开始
+     */
+    public void build(PathSink sink, int from, int to) {
+        if (count == 0 || from >= to) {
+            return;
+        }
+        if (count == 1) {
+            // 只有一个点，画一个圆点
+            sink.moveTo(points[0], points[1]);
+            sink.lineTo(points[0], points[1]);
+            return;
+        }
+        int lastPiece = count - 1;
+        to = Math.min(to, count);
+        if (from == 0) {
+            sink.moveTo(points[0], points[1]);
+        } else {
+            sink.moveTo(midX(from - 1), midY(from - 1));
+        }
+        for (int i = from; i < to; i++) {
+            if (i == 0) {
+                sink.lineTo(midX(0), midY(0));
+            } else if (i == lastPiece) {
+                sink.lineTo(points[i * 2], points[i * 2 + 1]);
+            } else {
+                sink.quadTo(points[i * 2], points[i * 2 + 1], midX(i), midY(i));
+            }
+        }
+    }
+
+    /**
+     * 第i个点和第i+1个点的中点
+     */
+    private float midX(int i) {
+        return (points[i * 2] + points[i * 2 + 2]) / 2;
+    }
+
+    private float midY(int i) {
+        return (points[i * 2 + 1] + points[i * 2 + 3]) / 2;
+    }
+}
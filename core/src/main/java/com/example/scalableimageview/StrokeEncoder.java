@@ -0,0 +1,90 @@
+package com.example.scalableimageview;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 把触摸事件编码成{@link StrokeFormat}格式写进ByteBuffer
+ * 只做编码，不碰文件，可以在主线程调用，写文件交给调用方在后台完成
+ * 每次写记录之前调用方需要保证buffer至少剩下{@link StrokeFormat#MAX_RECORD_BYTES}个字节
+ */
+public final class StrokeEncoder implements StrokeReader.Listener {
+
+    private ByteBuffer buffer;
+    private long lastTime;
+
+    /**
+     * 每根手指上一个点的坐标，已经按1/4像素取整，下标是手指id
+     */
+    private int[] lastXs = new int[10];
+    private int[] lastYs = new int[10];
+
+    /**
+     * 切换写入的buffer，写满之后交给后台线程写文件，换一个空的继续
+     */
+    public void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * 文件开头写一次
+     */
+    public void writeHeader() {
+        buffer.putInt(StrokeFormat.MAGIC);
+        buffer.put(StrokeFormat.VERSION);
+    }
+
+    @Override
+    public void onDown(int pointerId, long time, float x, float y) {
+        ensurePointer(pointerId);
+        int qx = StrokeFormat.quantize(x);
+        int qy = StrokeFormat.quantize(y);
+        buffer.put(StrokeFormat.TAG_DOWN);
+        StrokeFormat.putVarInt(buffer, pointerId);
+        putTime(time);
+        StrokeFormat.putVarInt(buffer, StrokeFormat.zigzag(qx));
+        StrokeFormat.putVarInt(buffer, StrokeFormat.zigzag(qy));
+        lastXs[pointerId] = qx;
+        lastYs[pointerId] = qy;
+    }
+
+    @Override
+    public void onMove(int pointerId, long time, float x, float y) {
+        ensurePointer(pointerId);
+        int qx = StrokeFormat.quantize(x);
+        int qy = StrokeFormat.quantize(y);
+        buffer.put(StrokeFormat.TAG_MOVE);
+        StrokeFormat.putVarInt(buffer, pointerId);
+        putTime(time);
+        StrokeFormat.putVarInt(buffer, StrokeFormat.zigzag(qx - lastXs[pointerId]));
+        StrokeFormat.putVarInt(buffer, StrokeFormat.zigzag(qy - lastYs[pointerId]));
+        lastXs[pointerId] = qx;
+        lastYs[pointerId] = qy;
+    }
+
+    @Override
+    public void onUp(int pointerId, long time) {
+        buffer.put(StrokeFormat.TAG_UP);
+        StrokeFormat.putVarInt(buffer, pointerId);
+        putTime(time);
+    }
+
+    private void putTime(long time) {
+        StrokeFormat.putVarLong(buffer, StrokeFormat.zigzag(time - lastTime));
+        lastTime = time;
+    }
+
+    private void ensurePointer(int pointerId) {
+        if (pointerId >= lastXs.length) {
+            int[] xs = new int[pointerId + 1];
+            int[] ys = new int[pointerId + 1];
+            System.arraycopy(lastXs, 0, xs, 0, lastXs.length);
+            System.arraycopy(lastYs, 0, ys, 0, lastYs.length);
+            lastXs = xs;
+            lastYs = ys;
+        }
+    }
+}
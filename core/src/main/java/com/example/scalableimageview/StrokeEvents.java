@@ -0,0 +1,82 @@
+package com.example.scalableimageview;
+
+/**
+ * 一批笔迹事件，存放在基本类型数组里
+ * 在后台线程解码填满，交给主线程一次性回放
+ */
+public final class StrokeEvents implements StrokeReader.Listener {
+
+    private static final byte DOWN = 0;
+    private static final byte MOVE = 1;
+    private static final byte UP = 2;
+
+    private final byte[] types;
+    private final int[] pointerIds;
+    private final long[] times;
+    private final float[] xs;
+    private final float[] ys;
+    private int size;
+
+    public StrokeEvents(int capacity) {
+        types = new byte[capacity];
+        pointerIds = new int[capacity];
+        times = new long[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == types.length;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public void onDown(int pointerId, long time, float x, float y) {
+        add(DOWN, pointerId, time, x, y);
+    }
+
+    @Override
+    public void onMove(int pointerId, long time, float x, float y) {
+        add(MOVE, pointerId, time, x, y);
+    }
+
+    @Override
+    public void onUp(int pointerId, long time) {
+        add(UP, pointerId, time, 0, 0);
+    }
+
+    private void add(byte type, int pointerId, long time, float x, float y) {
+        types[size] = type;
+        pointerIds[size] = pointerId;
+        times[size] = time;
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    /**
+     * 按顺序把这一批事件交给listener
+     */
+    public void replay(StrokeReader.Listener listener) {
+        for (int i = 0; i < size; i++) {
+            switch (types[i]) {
+                case DOWN:
+                    listener.onDown(pointerIds[i], times[i], xs[i], ys[i]);
+                    break;
+                case MOVE:
+                    listener.onMove(pointerIds[i], times[i], xs[i], ys[i]);
+                    break;
+                default:
+                    listener.onUp(pointerIds[i], times[i]);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.scalableimageview;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 笔迹文件格式
+ *
+ * 文件头：4字节魔数"STRK"，1字节版本号
+ * 之后是一条条记录，每条记录以1字节类型开头：
+ * - DOWN：手指id、时间差、x、y
+ * - MOVE：手指id、时间差、dx、dy
+ * - UP：手指id、时间差
+ * 手指id是varint，时间差是跟上一条记录相差的毫秒数，
+ * 坐标按1/4像素取整，DOWN记绝对值，MOVE记跟这根手指上一个点的差，都是zigzag编码的varint
+ * 手指匀速移动的时候一个采样点一般只占5到7个字节
+ */
+public final class StrokeFormat {
+
+    static final int MAGIC = 0x5354524B;
+    static final byte VERSION = 1;
+    static final int HEADER_BYTES = 5;
+
+    static final byte TAG_DOWN = 1;
+    static final byte TAG_MOVE = 2;
+    static final byte TAG_UP = 3;
+
+    /**
+     * 坐标的精度，1/4像素
+     */
+    static final float SCALE = 4f;
+
+    /**
+     * 一条记录最多占用的字节数：类型1 + 手指id 5 + 时间差10 + 坐标5 × 2
+     */
+    public static final int MAX_RECORD_BYTES = 26;
+
+    private StrokeFormat() {
+    }
+
+    static int quantize(float value) {
+        return Math.round(value * SCALE);
+    }
+
+    static float dequantize(int value) {
+        return value / SCALE;
+    }
+
+    static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("varint too long");
+    }
+
+    static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("varint too long");
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
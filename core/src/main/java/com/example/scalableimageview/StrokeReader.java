@@ -0,0 +1,138 @@
+package com.example.scalableimageview;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * 流式读取{@link StrokeFormat}格式的笔迹
+ * 每次从通道里读一块到固定大小的buffer里解码，文件再大也不会整个读进内存
+ * 调用方可以每读一批就先画出来，大文件逐步显示
+ *
+ * 录制过程中进程被杀，最后一条记录可能只写了一半，读到这里当作文件结束
+ */
+public final class StrokeReader {
+
+    /**
+     * 解码出来的事件，时间是毫秒，坐标是像素
+     */
+    public interface Listener {
+        void onDown(int pointerId, long time, float x, float y);
+
+        void onMove(int pointerId, long time, float x, float y);
+
+        void onUp(int pointerId, long time);
+    }
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private boolean headerRead;
+    private boolean eof;
+    private boolean finished;
+
+    private long lastTime;
+    private int[] lastXs = new int[10];
+    private int[] lastYs = new int[10];
+
+    public StrokeReader(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, StrokeFormat.MAX_RECORD_BYTES * 2));
+        buffer.flip();
+    }
+
+    /**
+     * 读一批记录
+     * @param maxRecords 这一批最多读多少条
+     * @return 这一批读到的记录数，已经读完返回-1
+     * @throws IOException 读文件出错，或者不是笔迹文件
+     */
+    public int read(Listener listener, int maxRecords) throws IOException {
+        if (finished) {
+            return -1;
+        }
+        if (!headerRead) {
+            fill();
+            if (buffer.remaining() < StrokeFormat.HEADER_BYTES
+                    || buffer.getInt() != StrokeFormat.MAGIC
+                    || buffer.get() > StrokeFormat.VERSION) {
+                throw new IOException("not a stroke file");
+            }
+            headerRead = true;
+        }
+        int count = 0;
+        while (count < maxRecords) {
+            if (buffer.remaining() < StrokeFormat.MAX_RECORD_BYTES && !eof) {
+                fill();
+            }
+            if (!buffer.hasRemaining()) {
+                finished = true;
+                break;
+            }
+            try {
+                readRecord(listener);
+            } catch (BufferUnderflowException e) {
+                // 最后一条记录不完整
+                finished = true;
+                break;
+            }
+            count++;
+        }
+        return count == 0 && finished ? -1 : count;
+    }
+
+    private void readRecord(Listener listener) throws IOException {
+        byte tag = buffer.get();
+        int pointerId = StrokeFormat.getVarInt(buffer);
+        long time = lastTime + StrokeFormat.unzigzag(StrokeFormat.getVarLong(buffer));
+        lastTime = time;
+        if (tag == StrokeFormat.TAG_UP) {
+            listener.onUp(pointerId, time);
+            return;
+        }
+        int x = StrokeFormat.unzigzag(StrokeFormat.getVarInt(buffer));
+        int y = StrokeFormat.unzigzag(StrokeFormat.getVarInt(buffer));
+        ensurePointer(pointerId);
+        if (tag == StrokeFormat.TAG_DOWN) {
+            lastXs[pointerId] = x;
+            lastYs[pointerId] = y;
+            listener.onDown(pointerId, time, StrokeFormat.dequantize(x), StrokeFormat.dequantize(y));
+        } else if (tag == StrokeFormat.TAG_MOVE) {
+            lastXs[pointerId] += x;
+            lastYs[pointerId] += y;
+            listener.onMove(pointerId, time,
+                    StrokeFormat.dequantize(lastXs[pointerId]), StrokeFormat.dequantize(lastYs[pointerId]));
+        } else {
+            throw new IOException("unknown record " + tag);
+        }
+    }
+
+    /**
+     * 把没读完的部分挪到开头，剩下的空间从通道里读满
+     */
+    private void fill() throws IOException {
+        buffer.compact();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                eof = true;
+                break;
+            }
+            if (read == 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    private void ensurePointer(int pointerId) {
+        if (pointerId >= lastXs.length) {
+            int[] xs = new int[pointerId + 1];
+            int[] ys = new int[pointerId + 1];
+            System.arraycopy(lastXs, 0, xs, 0, lastXs.length);
+            System.arraycopy(lastYs, 0, ys, 0, lastYs.length);
+            lastXs = xs;
+            lastYs = ys;
+        }
+    }
+}
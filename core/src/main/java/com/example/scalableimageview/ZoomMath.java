@@ -0,0 +1,103 @@
+package com.example.scalableimageview;
+
+/**
+ * 放缩和偏移相关的计算
+ * 不依赖Android，View里的几何计算都走这里，方便在JVM上测试和跑基准
+ */
+public final class ZoomMath {
+
+    private ZoomMath() {
+    }
+
+    /**
+     * 图片完整显示在View里的放缩系数（smallScale）
+     * 如果是宽大于高的图片，那么就是View宽/图片宽，否则是View高/图片高
+     */
+    public static float fitScale(int viewWidth, int viewHeight, int imageWidth, int imageHeight) {
+        if ((float) imageWidth / imageHeight > (float) viewWidth / viewHeight) {
+            return (float) viewWidth / imageWidth;
+        } else {
+            return (float) viewHeight / imageHeight;
+        }
+    }
+
+    /**
+     * 图片撑满View的放缩系数，也就是另一个方向撑满
+     */
+    public static float fillScale(int viewWidth, int viewHeight, int imageWidth, int imageHeight) {
+        if ((float) imageWidth / imageHeight > (float) viewWidth / viewHeight) {
+            return (float) viewHeight / imageHeight;
+        } else {
+            return (float) viewWidth / imageWidth;
+        }
+    }
+
+    /**
+     * 某个方向上的最大偏移，图片比View小的时候为0
+     * @param imageSize 图片在这个方向上的尺寸
+     * @param scale 放缩系数
+     * @param viewSize View在这个方向上的尺寸
+     */
+    public static float maxOffset(float imageSize, float scale, int viewSize) {
+        return Math.max(0, (imageSize * scale - viewSize) / 2);
+    }
+
+    /**
+     * 限制在 [-max, max] 之间
+     */
+    public static float clampOffset(float offset, float max) {
+        return Math.min(Math.max(offset, -max), max);
+    }
+
+    public static float clamp(float value, float min, float max) {
+        return Math.min(Math.max(value, min), max);
+    }
+
+    /**
+     * 以某个点为中心放缩之后的偏移，放缩前后这个点下面的内容不动
+     * @param focus 放缩中心
+     * @param center View的中心，也是放缩的轴
+     * @param offset 放缩之前的偏移
+     * @param ratio 新放缩系数 / 旧放缩系数
+     */
+    public static float zoomOffset(float focus, float center, float offset, float ratio) {
+        float focusOffset = focus - center;
+        return focusOffset - (focusOffset - offset) * ratio;
+    }
+
+    /**
+     * 图片旋转之后外接矩形的宽度，放缩之前
+     * @param degrees 顺时针旋转的角度
+     */
+    public static float rotatedWidth(int imageWidth, int imageHeight, float degrees) {
+        double radians = Math.toRadians(degrees);
+        return (float) (Math.abs(imageWidth * Math.cos(radians)) + Math.abs(imageHeight * Math.sin(radians)));
+    }
+
+    /**
+     * 图片旋转之后外接矩形的高度，放缩之前
+     */
+    public static float rotatedHeight(int imageWidth, int imageHeight, float degrees) {
+        double radians = Math.toRadians(degrees);
+        return (float) (Math.abs(imageWidth * Math.sin(radians)) + Math.abs(imageHeight * Math.cos(radians)));
+    }
+
+    /**
+     * 角度转换到 [0, 360) 之间
+     */
+    public static float normalizeDegrees(float degrees) {
+        degrees %= 360;
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+
+    /**
+     * 离得最近的90度的整数倍
+     */
+    public static float snapDegrees(float degrees) {
+        return Math.round(degrees / 90) * 90f;
+    }
+
+    public static float lerp(float start, float end, float fraction) {
+        return start + (end - start) * fraction;
+    }
+}
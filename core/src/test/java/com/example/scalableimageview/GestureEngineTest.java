@@ -0,0 +1,251 @@
+package com.example.scalableimageview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GestureEngineTest {
+
+    private static final float SLOP = 10;
+
+    private final List<float[]> transforms = new ArrayList<>();
+    private final List<Integer> ups = new ArrayList<>();
+    private final List<float[]> doubleTaps = new ArrayList<>();
+    private int ends;
+    private boolean endMoved;
+    private float endVelocityX;
+    private float endVelocityY;
+
+    private GestureEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new GestureEngine(new GestureEngine.SimpleListener() {
+            @Override
+            public void onPointerUp(int pointerId, long time) {
+                ups.add(pointerId);
+            }
+
+            @Override
+            public void onTransform(float focusX, float focusY, float dx, float dy, float scale, float rotation) {
+                transforms.add(new float[]{focusX, focusY, dx, dy, scale, rotation});
+            }
+
+            @Override
+            public void onGestureEnd(boolean moved, float velocityX, float velocityY) {
+                ends++;
+                endMoved = moved;
+                endVelocityX = velocityX;
+                endVelocityY = velocityY;
+            }
+
+            @Override
+            public void onDoubleTap(float x, float y) {
+                doubleTaps.add(new float[]{x, y});
+            }
+        });
+        engine.setTouchSlop(SLOP);
+        engine.setDoubleTapSlop(50);
+    }
+
+    @Test
+    public void panStartsAfterSlopAndIncludesMovementWithinIt() {
+        single(GestureEngine.ACTION_DOWN, 0, 0, 0);
+        single(GestureEngine.ACTION_MOVE, 5, 0, 10);
+        assertEquals(0, transforms.size());
+        assertFalse(engine.isMoved());
+
+        single(GestureEngine.ACTION_MOVE, 20, 5, 20);
+        assertTrue(engine.isMoved());
+        assertEquals(1, transforms.size());
+        assertTransform(transforms.get(0), 20, 5, 20, 5, 1, 0);
+
+        single(GestureEngine.ACTION_MOVE, 22, 5, 30);
+        assertTransform(transforms.get(1), 22, 5, 2, 0, 1, 0);
+    }
+
+    @Test
+    public void pinchScalesAroundFocus() {
+        single(GestureEngine.ACTION_DOWN, 100, 100, 0);
+        pair(GestureEngine.ACTION_POINTER_DOWN, 1, 100, 100, 200, 100, 10);
+        // 中心点(150,100)，半径50，第二根手指拉到300之后半径100
+        pair(GestureEngine.ACTION_MOVE, 0, 100, 100, 300, 100, 20);
+
+        assertEquals(1, transforms.size());
+        assertTransform(transforms.get(0), 200, 100, 50, 0, 2, 0);
+    }
+
+    @Test
+    public void pureTwistPassesSlop() {
+        single(GestureEngine.ACTION_DOWN, 100, 100, 0);
+        pair(GestureEngine.ACTION_POINTER_DOWN, 1, 100, 100, 200, 100, 10);
+
+        // 绕中心点转10度，弧长50*0.17≈8.7，还在阈值以内
+        twist(10, 20);
+        assertEquals(0, transforms.size());
+
+        // 转到30度，弧长≈26，中心点和半径都没变
+        twist(30, 30);
+        assertTrue(engine.isMoved());
+        assertEquals(1, transforms.size());
+        assertTransform(transforms.get(0), 150, 100, 0, 0, 1, 30);
+
+        twist(20, 40);
+        assertTransform(transforms.get(1), 150, 100, 0, 0, 1, -10);
+    }
+
+    @Test
+    public void pointerUpHandsOffWithoutJump() {
+        single(GestureEngine.ACTION_DOWN, 0, 0, 0);
+        pair(GestureEngine.ACTION_POINTER_DOWN, 1, 0, 0, 100, 0, 10);
+        pair(GestureEngine.ACTION_POINTER_UP, 0, 0, 0, 100, 0, 20);
+
+        assertEquals(1, ups.size());
+        assertEquals(0, (int) ups.get(0));
+        assertEquals(1, engine.getPointerCount());
+        assertEquals(1, engine.getPointerId(0));
+
+        // 剩下的手指成为新的基准，中心点从(50,0)换到(100,0)不算移动
+        event(GestureEngine.ACTION_MOVE, 0, new int[]{1}, new float[]{130}, new float[]{0}, 30);
+        assertEquals(1, transforms.size());
+        assertTransform(transforms.get(0), 130, 0, 30, 0, 1, 0);
+    }
+
+    @Test
+    public void focusIsCentroidOfPointersStillDown() {
+        assertEquals(0f, engine.getFocusX(), 0f);
+        int[] ids = {0, 1, 2};
+        float[] xs = {0, 100, 400};
+        float[] ys = {0, 50, 100};
+        event(GestureEngine.ACTION_DOWN, 0, new int[]{0}, new float[]{0}, new float[]{0}, 0);
+        engine.onEvent(GestureEngine.ACTION_POINTER_DOWN, 1, 2, ids, xs, ys, 10);
+        engine.onEvent(GestureEngine.ACTION_POINTER_DOWN, 2, 3, ids, xs, ys, 20);
+        assertEquals(500f / 3, engine.getFocusX(), 1e-3f);
+        assertEquals(50f, engine.getFocusY(), 1e-3f);
+
+        // 抬起的手指不再参与计算
+        engine.onEvent(GestureEngine.ACTION_POINTER_UP, 1, 3, ids, xs, ys, 30);
+        assertEquals(200f, engine.getFocusX(), 1e-3f);
+        assertEquals(50f, engine.getFocusY(), 1e-3f);
+    }
+
+    @Test
+    public void releaseVelocityFromRecentSamples() {
+        single(GestureEngine.ACTION_DOWN, 0, 0, 0);
+        for (int t = 10; t <= 100; t += 10) {
+            single(GestureEngine.ACTION_MOVE, t * 2, -t, t);
+        }
+        single(GestureEngine.ACTION_UP, 200, -100, 100);
+
+        assertEquals(1, ends);
+        assertTrue(endMoved);
+        assertEquals(2000f, endVelocityX, 1f);
+        assertEquals(-1000f, endVelocityY, 1f);
+    }
+
+    @Test
+    public void releaseAfterPauseHasNoVelocity() {
+        single(GestureEngine.ACTION_DOWN, 0, 0, 0);
+        for (int t = 10; t <= 100; t += 10) {
+            single(GestureEngine.ACTION_MOVE, t * 2, 0, t);
+        }
+        single(GestureEngine.ACTION_UP, 200, 0, 200);
+
+        assertTrue(endMoved);
+        assertEquals(0f, endVelocityX, 0f);
+        assertEquals(0f, endVelocityY, 0f);
+    }
+
+    @Test
+    public void doubleTapWithinTimeout() {
+        tap(100, 100, 0);
+        single(GestureEngine.ACTION_DOWN, 110, 100, 200);
+
+        assertEquals(1, doubleTaps.size());
+        assertEquals(110f, doubleTaps.get(0)[0], 0f);
+        assertEquals(100f, doubleTaps.get(0)[1], 0f);
+
+        // 第三次点击不能跟第二次连成双击
+        single(GestureEngine.ACTION_UP, 110, 100, 250);
+        tap(110, 100, 350);
+        assertEquals(1, doubleTaps.size());
+    }
+
+    @Test
+    public void doubleTapTimingAndDistance() {
+        // 间隔太长
+        tap(100, 100, 0);
+        tap(100, 100, 50 + 301);
+        // 间隔太短
+        tap(100, 100, 1000);
+        tap(100, 100, 1050 + 39);
+        // 离得太远
+        tap(100, 100, 2000);
+        tap(200, 100, 2200);
+        assertEquals(0, doubleTaps.size());
+    }
+
+    @Test
+    public void cancelEndsWithoutVelocityOrTap() {
+        single(GestureEngine.ACTION_DOWN, 0, 0, 0);
+        pair(GestureEngine.ACTION_POINTER_DOWN, 1, 0, 0, 100, 0, 10);
+        pair(GestureEngine.ACTION_MOVE, 0, 50, 0, 150, 0, 20);
+        event(GestureEngine.ACTION_CANCEL, 0, new int[0], new float[0], new float[0], 30);
+
+        assertEquals(1, ends);
+        assertTrue(endMoved);
+        assertEquals(0f, endVelocityX, 0f);
+        assertEquals(0f, endVelocityY, 0f);
+        assertEquals(2, ups.size());
+        assertEquals(0, engine.getPointerCount());
+
+        // 取消掉的点击不参与双击
+        single(GestureEngine.ACTION_DOWN, 0, 0, 100);
+        event(GestureEngine.ACTION_CANCEL, 0, new int[0], new float[0], new float[0], 110);
+        single(GestureEngine.ACTION_DOWN, 0, 0, 200);
+        assertEquals(0, doubleTaps.size());
+    }
+
+    private void tap(float x, float y, long time) {
+        single(GestureEngine.ACTION_DOWN, x, y, time);
+        single(GestureEngine.ACTION_UP, x, y, time + 50);
+    }
+
+    /**
+     * 两根手指绕(150,100)对称地转到degrees度
+     */
+    private void twist(float degrees, long time) {
+        double radians = Math.toRadians(degrees);
+        float cos = (float) (50 * Math.cos(radians));
+        float sin = (float) (50 * Math.sin(radians));
+        pair(GestureEngine.ACTION_MOVE, 0, 150 - cos, 100 - sin, 150 + cos, 100 + sin, time);
+    }
+
+    private void single(int action, float x, float y, long time) {
+        event(action, 0, new int[]{0}, new float[]{x}, new float[]{y}, time);
+    }
+
+    private void pair(int action, int actionIndex, float x0, float y0, float x1, float y1, long time) {
+        event(action, actionIndex, new int[]{0, 1}, new float[]{x0, x1}, new float[]{y0, y1}, time);
+    }
+
+    private void event(int action, int actionIndex, int[] ids, float[] xs, float[] ys, long time) {
+        engine.onEvent(action, actionIndex, ids.length, ids, xs, ys, time);
+    }
+
+    private static void assertTransform(float[] actual, float focusX, float focusY, float dx, float dy,
+                                        float scale, float rotation) {
+        assertEquals(focusX, actual[0], 1e-3f);
+        assertEquals(focusY, actual[1], 1e-3f);
+        assertEquals(dx, actual[2], 1e-3f);
+        assertEquals(dy, actual[3], 1e-3f);
+        assertEquals(scale, actual[4], 1e-4f);
+        assertEquals(rotation, actual[5], 1e-3f);
+    }
+}
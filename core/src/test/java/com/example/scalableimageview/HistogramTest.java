@@ -0,0 +1,87 @@
+package com.example.scalableimageview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class HistogramTest {
+
+    private final Histogram histogram = new Histogram();
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0f, histogram.getAverageMillis(), 0f);
+        assertEquals(0f, histogram.getMaxMillis(), 0f);
+        assertEquals(0f, histogram.getPercentileMillis(50), 0f);
+    }
+
+    @Test
+    public void valuesGoToTheFirstBucketNotBelowThem() {
+        // 上界是闭区间
+        histogram.record(0);
+        histogram.record(50);
+        histogram.record(51);
+        histogram.record(16000);
+        histogram.record(16001);
+        // 超过最大的上界，进最后一个桶
+        histogram.record(1000000);
+
+        long[] counts = histogram.getBucketCounts();
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(16000, Histogram.getBucketBoundMicros(9));
+        assertEquals(1, counts[9]);
+        assertEquals(1, counts[10]);
+        assertEquals(1, counts[counts.length - 1]);
+        assertEquals(Long.MAX_VALUE, Histogram.getBucketBoundMicros(counts.length - 1));
+        assertEquals(6, histogram.getCount());
+    }
+
+    @Test
+    public void bucketCountsAreACopy() {
+        histogram.record(10);
+        histogram.getBucketCounts()[0] = 100;
+        assertEquals(1, histogram.getBucketCounts()[0]);
+    }
+
+    @Test
+    public void percentilesReturnTheBucketBound() {
+        for (int i = 0; i < 90; i++) {
+            histogram.record(40);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(20000);
+        }
+        histogram.record(300000);
+
+        assertEquals(0.05f, histogram.getPercentileMillis(50), 1e-6f);
+        assertEquals(0.05f, histogram.getPercentileMillis(90), 1e-6f);
+        assertEquals(24f, histogram.getPercentileMillis(91), 1e-6f);
+        assertEquals(24f, histogram.getPercentileMillis(99), 1e-6f);
+        // 最后一个桶没有上界，用最大值
+        assertEquals(300f, histogram.getPercentileMillis(100), 1e-6f);
+    }
+
+    @Test
+    public void averageAndMax() {
+        histogram.record(1000);
+        histogram.record(3000);
+        assertEquals(2f, histogram.getAverageMillis(), 1e-6f);
+        assertEquals(3f, histogram.getMaxMillis(), 1e-6f);
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        histogram.record(100);
+        histogram.record(500000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0f, histogram.getAverageMillis(), 0f);
+        assertEquals(0f, histogram.getMaxMillis(), 0f);
+        assertEquals(0f, histogram.getPercentileMillis(99), 0f);
+        assertArrayEquals(new long[histogram.getBucketCounts().length], histogram.getBucketCounts());
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.scalableimageview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 随机插入、删除、查询，结果跟逐个比较的暴力查找对照
+ */
+public class SpatialIndexTest {
+
+    private static final float WORLD = 1000;
+
+    private final SpatialIndex index = new SpatialIndex();
+
+    /**
+     * 暴力查找用的数据，下标跟ids一致
+     */
+    private final List<Integer> ids = new ArrayList<>();
+    private final List<float[]> rects = new ArrayList<>();
+
+    private final int[] found = new int[4096];
+    private int foundCount;
+
+    private final SpatialIndex.Visitor collector = new SpatialIndex.Visitor() {
+        @Override
+        public void visit(int id) {
+            found[foundCount++] = id;
+        }
+    };
+
+    @Test
+    public void randomOperationsMatchBruteForce() {
+        Random random = new Random(42);
+        int nextId = 0;
+        for (int step = 0; step < 20000; step++) {
+            int op = random.nextInt(10);
+            if (op < 5 || ids.isEmpty()) {
+                float[] rect = randomRect(random);
+                index.insert(nextId, rect[0], rect[1], rect[2], rect[3]);
+                ids.add(nextId);
+                rects.add(rect);
+                nextId++;
+            } else if (op < 8) {
+                int i = random.nextInt(ids.size());
+                float[] rect = rects.get(i);
+                assertTrue(index.remove(ids.get(i), rect[0], rect[1], rect[2], rect[3]));
+                removeAt(i);
+            } else if (op < 9) {
+                float[] query = randomRect(random);
+                foundCount = 0;
+                int count = index.search(query[0], query[1], query[2], query[3], collector);
+                assertEquals(foundCount, count);
+                assertArrayEquals(bruteForce(query[0], query[1], query[2], query[3]), sortedFound());
+            } else {
+                float x = random.nextFloat() * WORLD;
+                float y = random.nextFloat() * WORLD;
+                foundCount = 0;
+                int count = index.searchPoint(x, y, collector);
+                assertEquals(foundCount, count);
+                assertArrayEquals(bruteForce(x, y, x, y), sortedFound());
+            }
+            assertEquals(ids.size(), index.size());
+        }
+
+        // 全部删掉之后树回到空的状态，还能继续用
+        while (!ids.isEmpty()) {
+            int i = ids.size() - 1;
+            float[] rect = rects.get(i);
+            assertTrue(index.remove(ids.get(i), rect[0], rect[1], rect[2], rect[3]));
+            removeAt(i);
+        }
+        assertEquals(0, index.size());
+        foundCount = 0;
+        assertEquals(0, index.search(0, 0, WORLD, WORLD, collector));
+        index.insert(1, 10, 10, 20, 20);
+        assertEquals(1, index.searchPoint(15, 15, collector));
+    }
+
+    @Test
+    public void removeMissingEntry() {
+        index.insert(1, 0, 0, 10, 10);
+        assertFalse(index.remove(2, 0, 0, 10, 10));
+        // 范围不对找不到所在的叶子
+        assertFalse(index.remove(1, 20, 20, 30, 30));
+        assertTrue(index.remove(1, 0, 0, 10, 10));
+        assertFalse(index.remove(1, 0, 0, 10, 10));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void sameIdWithDifferentBounds() {
+        index.insert(7, 0, 0, 10, 10);
+        index.insert(7, 100, 100, 110, 110);
+        assertTrue(index.remove(7, 100, 100, 110, 110));
+        foundCount = 0;
+        assertEquals(0, index.searchPoint(105, 105, collector));
+        assertEquals(1, index.searchPoint(5, 5, collector));
+    }
+
+    @Test
+    public void touchingEdgesIntersect() {
+        index.insert(1, 0, 0, 10, 10);
+        foundCount = 0;
+        assertEquals(1, index.search(10, 10, 20, 20, collector));
+        assertEquals(1, index.searchPoint(0, 10, collector));
+        assertEquals(0, index.search(10.01f, 0, 20, 20, collector));
+    }
+
+    @Test
+    public void clearEmptiesIndex() {
+        for (int i = 0; i < 100; i++) {
+            index.insert(i, i, i, i + 5, i + 5);
+        }
+        index.clear();
+        assertEquals(0, index.size());
+        foundCount = 0;
+        assertEquals(0, index.search(0, 0, WORLD, WORLD, collector));
+    }
+
+    /**
+     * 大部分是小矩形，偶尔有细长的和点，覆盖退化的范围
+     */
+    private static float[] randomRect(Random random) {
+        float left = random.nextFloat() * WORLD;
+        float top = random.nextFloat() * WORLD;
+        float width;
+        float height;
+        switch (random.nextInt(8)) {
+            case 0:
+                width = 0;
+                height = 0;
+                break;
+            case 1:
+                width = random.nextFloat() * WORLD / 2;
+                height = 1;
+                break;
+            default:
+                width = random.nextFloat() * 50;
+                height = random.nextFloat() * 50;
+                break;
+        }
+        return new float[]{left, top, left + width, top + height};
+    }
+
+    private void removeAt(int i) {
+        int last = ids.size() - 1;
+        ids.set(i, ids.get(last));
+        rects.set(i, rects.get(last));
+        ids.remove(last);
+        rects.remove(last);
+    }
+
+    private int[] bruteForce(float left, float top, float right, float bottom) {
+        int[] result = new int[ids.size()];
+        int count = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            float[] rect = rects.get(i);
+            if (rect[0] <= right && rect[2] >= left && rect[1] <= bottom && rect[3] >= top) {
+                result[count++] = ids.get(i);
+            }
+        }
+        int[] sorted = Arrays.copyOf(result, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private int[] sortedFound() {
+        int[] sorted = Arrays.copyOf(found, foundCount);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
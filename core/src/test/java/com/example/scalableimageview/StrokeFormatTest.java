@@ -0,0 +1,165 @@
+package com.example.scalableimageview;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class StrokeFormatTest {
+
+    /**
+     * 读的时候用很小的buffer，记录经常跨越两次读取
+     */
+    private static final int READ_BUFFER = 64;
+
+    @Test
+    public void varIntsAndZigzagRoundTrip() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        int[] ints = {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        long[] longs = {0, -1, 1L << 40, -(1L << 40), Long.MAX_VALUE, Long.MIN_VALUE};
+        for (int value : ints) {
+            buffer.clear();
+            StrokeFormat.putVarInt(buffer, StrokeFormat.zigzag(value));
+            buffer.flip();
+            assertEquals(value, StrokeFormat.unzigzag(StrokeFormat.getVarInt(buffer)));
+        }
+        for (long value : longs) {
+            buffer.clear();
+            StrokeFormat.putVarLong(buffer, StrokeFormat.zigzag(value));
+            buffer.flip();
+            assertEquals(value, StrokeFormat.unzigzag(StrokeFormat.getVarLong(buffer)));
+        }
+    }
+
+    @Test
+    public void randomEventsRoundTrip() throws IOException {
+        List<long[]> written = new ArrayList<>();
+        byte[] data = encodeRandom(20000, written);
+        List<long[]> read = readAll(data);
+        assertEvents(written, read);
+    }
+
+    @Test
+    public void truncatedLastRecordEndsTheFile() throws IOException {
+        List<long[]> written = new ArrayList<>();
+        byte[] data = encodeRandom(1000, written);
+        // 最后一条记录只写了一半
+        List<long[]> read = readAll(Arrays.copyOf(data, data.length - 1));
+        assertEvents(written.subList(0, written.size() - 1), read);
+    }
+
+    @Test
+    public void headerOnlyFileHasNoRecords() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(StrokeFormat.HEADER_BYTES);
+        StrokeEncoder encoder = new StrokeEncoder();
+        encoder.setBuffer(buffer);
+        encoder.writeHeader();
+        StrokeReader reader = reader(buffer.array());
+        assertEquals(-1, reader.read(new Recorder(), 100));
+    }
+
+    @Test(expected = IOException.class)
+    public void badMagicIsRejected() throws IOException {
+        byte[] data = {'J', 'P', 'E', 'G', StrokeFormat.VERSION, StrokeFormat.TAG_UP, 0, 0};
+        reader(data).read(new Recorder(), 100);
+    }
+
+    @Test(expected = IOException.class)
+    public void newerVersionIsRejected() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(StrokeFormat.HEADER_BYTES);
+        buffer.putInt(StrokeFormat.MAGIC);
+        buffer.put((byte) (StrokeFormat.VERSION + 1));
+        reader(buffer.array()).read(new Recorder(), 100);
+    }
+
+    @Test(expected = IOException.class)
+    public void tooShortFileIsRejected() throws IOException {
+        reader(new byte[]{'S', 'T'}).read(new Recorder(), 100);
+    }
+
+    /**
+     * 随机的多指事件，手指id超过10，坐标有正有负、有大跳跃，时间偶尔倒退
+     * @param events 写入的事件，按读出来的精度记录：{类型, 手指id, 时间, x*4, y*4}
+     */
+    private static byte[] encodeRandom(int count, List<long[]> events) {
+        Random random = new Random(7);
+        ByteBuffer buffer = ByteBuffer.allocate(StrokeFormat.HEADER_BYTES + count * StrokeFormat.MAX_RECORD_BYTES);
+        StrokeEncoder encoder = new StrokeEncoder();
+        encoder.setBuffer(buffer);
+        encoder.writeHeader();
+        long time = 1000;
+        boolean[] down = new boolean[12];
+        for (int i = 0; i < count; i++) {
+            int pointer = random.nextInt(down.length);
+            time += random.nextInt(40) - 5;
+            float x = random.nextInt(10) == 0 ? random.nextFloat() * 100000 - 50000 : random.nextFloat() * 2000 - 100;
+            float y = random.nextFloat() * 3000 - 100;
+            if (!down[pointer]) {
+                encoder.onDown(pointer, time, x, y);
+                events.add(new long[]{StrokeFormat.TAG_DOWN, pointer, time,
+                        StrokeFormat.quantize(x), StrokeFormat.quantize(y)});
+                down[pointer] = true;
+            } else if (random.nextInt(8) == 0) {
+                encoder.onUp(pointer, time);
+                events.add(new long[]{StrokeFormat.TAG_UP, pointer, time, 0, 0});
+                down[pointer] = false;
+            } else {
+                encoder.onMove(pointer, time, x, y);
+                events.add(new long[]{StrokeFormat.TAG_MOVE, pointer, time,
+                        StrokeFormat.quantize(x), StrokeFormat.quantize(y)});
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static List<long[]> readAll(byte[] data) throws IOException {
+        StrokeReader reader = reader(data);
+        Recorder recorder = new Recorder();
+        // 分批读
+        while (reader.read(recorder, 37) >= 0) {
+        }
+        assertEquals(-1, reader.read(recorder, 37));
+        return recorder.events;
+    }
+
+    private static StrokeReader reader(byte[] data) {
+        return new StrokeReader(Channels.newChannel(new ByteArrayInputStream(data)), READ_BUFFER);
+    }
+
+    private static void assertEvents(List<long[]> expected, List<long[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("event " + i, Arrays.toString(expected.get(i)), Arrays.toString(actual.get(i)));
+        }
+    }
+
+    private static class Recorder implements StrokeReader.Listener {
+
+        final List<long[]> events = new ArrayList<>();
+
+        @Override
+        public void onDown(int pointerId, long time, float x, float y) {
+            events.add(new long[]{StrokeFormat.TAG_DOWN, pointerId, time,
+                    StrokeFormat.quantize(x), StrokeFormat.quantize(y)});
+        }
+
+        @Override
+        public void onMove(int pointerId, long time, float x, float y) {
+            events.add(new long[]{StrokeFormat.TAG_MOVE, pointerId, time,
+                    StrokeFormat.quantize(x), StrokeFormat.quantize(y)});
+        }
+
+        @Override
+        public void onUp(int pointerId, long time) {
+            events.add(new long[]{StrokeFormat.TAG_UP, pointerId, time, 0, 0});
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.scalableimageview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ZoomMathTest {
+
+    private static final float DELTA = 1e-4f;
+
+    @Test
+    public void wideImageFitsByWidthAndFillsByHeight() {
+        // 图片比View宽
+        assertEquals(0.5f, ZoomMath.fitScale(1000, 2000, 2000, 1000), DELTA);
+        assertEquals(2f, ZoomMath.fillScale(1000, 2000, 2000, 1000), DELTA);
+    }
+
+    @Test
+    public void tallImageFitsByHeightAndFillsByWidth() {
+        // 图片比View高
+        assertEquals(0.5f, ZoomMath.fitScale(1000, 1000, 500, 2000), DELTA);
+        assertEquals(2f, ZoomMath.fillScale(1000, 1000, 500, 2000), DELTA);
+    }
+
+    @Test
+    public void sameAspectFitsAndFillsEqually() {
+        assertEquals(2f, ZoomMath.fitScale(600, 400, 300, 200), DELTA);
+        assertEquals(2f, ZoomMath.fillScale(600, 400, 300, 200), DELTA);
+    }
+
+    @Test
+    public void maxOffsetIsHalfTheOverflow() {
+        assertEquals(250f, ZoomMath.maxOffset(1000, 1.5f, 1000), DELTA);
+        // 图片比View小的方向不能平移
+        assertEquals(0f, ZoomMath.maxOffset(1000, 0.5f, 1000), DELTA);
+        assertEquals(0f, ZoomMath.maxOffset(1000, 1f, 1000), DELTA);
+    }
+
+    @Test
+    public void clampOffsetIsSymmetric() {
+        assertEquals(100f, ZoomMath.clampOffset(150, 100), DELTA);
+        assertEquals(-100f, ZoomMath.clampOffset(-150, 100), DELTA);
+        assertEquals(30f, ZoomMath.clampOffset(30, 100), DELTA);
+        assertEquals(0f, ZoomMath.clampOffset(30, 0), DELTA);
+    }
+
+    @Test
+    public void zoomOffsetKeepsTheFocusStill() {
+        float center = 500;
+        float offset = 40;
+        float scale = 2;
+        float ratio = 1.5f;
+        float focus = 800;
+        float newOffset = ZoomMath.zoomOffset(focus, center, offset, ratio);
+        // 焦点下面的内容在以View中心为轴放缩之前和之后的位置一样
+        float contentBefore = (focus - center - offset) / scale;
+        float contentAfter = (focus - center - newOffset) / (scale * ratio);
+        assertEquals(contentBefore, contentAfter, DELTA);
+    }
+
+    @Test
+    public void zoomAroundTheCenterKeepsTheOffsetScaled() {
+        assertEquals(80f, ZoomMath.zoomOffset(500, 500, 40, 2), DELTA);
+        // 放缩比例为1的时候偏移不变
+        assertEquals(40f, ZoomMath.zoomOffset(123, 500, 40, 1), DELTA);
+    }
+
+    @Test
+    public void rotatedBoundsSwapAtNinetyDegrees() {
+        assertEquals(400f, ZoomMath.rotatedWidth(400, 300, 0), DELTA);
+        assertEquals(300f, ZoomMath.rotatedWidth(400, 300, 90), DELTA);
+        assertEquals(400f, ZoomMath.rotatedHeight(400, 300, 90), DELTA);
+        float diagonal = (float) ((400 + 300) * Math.cos(Math.toRadians(45)));
+        assertEquals(diagonal, ZoomMath.rotatedWidth(400, 300, 45), DELTA);
+    }
+
+    @Test
+    public void degreesAreNormalizedAndSnapped() {
+        assertEquals(270f, ZoomMath.normalizeDegrees(-90), DELTA);
+        assertEquals(10f, ZoomMath.normalizeDegrees(370), DELTA);
+        assertEquals(90f, ZoomMath.snapDegrees(80), DELTA);
+        assertEquals(0f, ZoomMath.snapDegrees(-40), DELTA);
+        assertEquals(180f, ZoomMath.snapDegrees(136), DELTA);
+    }
+
+    @Test
+    public void clampAndLerp() {
+        assertEquals(1f, ZoomMath.clamp(0.5f, 1, 3), DELTA);
+        assertEquals(3f, ZoomMath.clamp(5, 1, 3), DELTA);
+        assertEquals(2.5f, ZoomMath.lerp(2, 3, 0.5f), DELTA);
+    }
+}